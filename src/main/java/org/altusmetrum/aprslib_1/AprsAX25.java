@@ -100,8 +100,111 @@ public class AprsAX25 implements AprsData {
 	int	total_len;
 	int	frame_len;
 	int	num_addr;
+	int	fcs;
+
+	/* CRC of the frame so far, and as it was one and two bytes
+	 * back, which is where the FCS starts
+	 */
+	int	crc, crc_1, crc_2;
+
+	/*
+	 * Bit error recovery. When enabled, a frame failing the FCS
+	 * check is searched for one flipped bit (and, with
+	 * recover_pairs, two adjacent ones, which is what a single
+	 * raw bit error turns into after NRZI decoding).
+	 *
+	 * The search runs the CRC difference made by a flip
+	 * backwards from the end of the frame one bit at a time,
+	 * comparing it against the syndrome, so each candidate costs
+	 * one shift and compare instead of a CRC over the frame.
+	 * recover_max_len caps the frame length searched, and
+	 * recover_rate the number of candidate bits per second
+	 * across all frames.
+	 *
+	 * Each candidate is another chance for a frame with worse
+	 * damage to match the FCS by accident, and searching pairs
+	 * doubles the candidates, so the pair search has its own,
+	 * smaller, recover_pair_rate; once that runs out, frames are
+	 * only searched for single flips.
+	 */
+	boolean	recover;
+	boolean	recover_pairs = true;
+	int	recover_max_len = 256;
+	long	recover_rate = 4000000;
+	long	recover_pair_rate = 1000000;
+
+	/* A per-second allowance of candidate bits */
+	static class budget {
+		long	left;
+		long	time;
+		long	rate;	/* Rate 'left' was filled at */
+
+		/* Spend 'bits' of the allowance, if there's enough */
+		boolean spend(long rate, int bits) {
+			long	now = System.nanoTime();
+
+			/* Start over with a full budget when the rate changes */
+			if (rate != this.rate) {
+				this.rate = rate;
+				left = rate;
+				time = now;
+			}
+
+			/* The budget holds at most one second, so don't let a long
+			 * quiet spell overflow the refill
+			 */
+			left += Math.min(now - time, 1000000000L) * rate / 1000000000L;
+			if (left > rate)
+				left = rate;
+			time = now;
+
+			if (left < bits)
+				return false;
+			left -= bits;
+			return true;
+		}
+	}
+
+	budget	recover_budget = new budget();
+	budget	pair_budget = new budget();
+
+	/* Bits fixed in the current frame */
+	int	fixed_bits;
+
+	/*
+	 * Header validation. With validate set, the address, control
+	 * and pid fields are checked as they arrive and the frame is
+	 * abandoned as soon as it can't be an APRS packet, so that
+	 * noise after a false flag isn't buffered to the end. When
+	 * recovering bit errors, a couple of bad header bytes are
+	 * allowed through for recover() to fix.
+	 */
+	boolean	validate = true;
+
+	int	header_end;	/* End of the address, control and pid fields */
+	int	header_addrs;	/* Addresses seen, once the last one is */
+	int	header_bad;	/* Header bytes which failed the checks */
+	boolean	abandoned;
+
+	/* Frames abandoned and the bytes they held when that happened */
+	int	rejected_frames;
+	int	rejected_bytes;
+
+	/* Recovery statistics */
+	int	recovered_single;
+	int	recovered_pair;
+	int	recover_failed;
+	int	recover_ambiguous;	/* Failed with more than one candidate */
+	int	recover_skipped;
 
 	AprsPacket	packet;
+	AprsTrace	trace;
+
+	/* The last good frame, in place in 'frame' */
+	AprsFrame	view;
+
+	/* Deliver packets which decode their fields on demand */
+	boolean		lazy;
 
 	private final int frame(int i) {
 		return frame[i] & 0xff;
@@ -127,31 +230,26 @@ public class AprsAX25 implements AprsData {
 	}
 
 	int ssid(int n) {
-		if (n < 0 || n >= num_addr)
-			return 0;
-		return (frame(6 + n*7) & SSID_SSID_MASK) >> SSID_SSID_SHIFT;
+		return view.ssid(n);
 	}
 
-	AprsAddress address(int n) {
-		if (n < 0 || n >= num_addr)
-			return new AprsAddress("??????", 0);
-
-		StringBuilder s = new StringBuilder();
-		for (int i = 0; i < 6; i++) {
-			int ch = frame(n*7 + i) >> 1;
-			if (ch <= ' ') break;
-			if (ch > 'a')
-				System.out.printf("weird address %x\n", ch);
-			s.appendCodePoint(ch);
+	static AprsAddress address(AprsFrame view, int n, AprsTrace trace) {
+		if (trace != null && n >= 0 && n < view.num_addr()) {
+			for (int i = 0; i < view.callsign_length(n); i++) {
+				int ch = (view.data()[n*7 + i] & 0xff) >> 1;
+				if (ch > 'a')
+					trace.message(String.format("weird address %x", ch));
+			}
 		}
+		return view.address(n);
+	}
 
-		return new AprsAddress(s.toString(), ssid(n));
+	AprsAddress address(int n) {
+		return address(view, n, trace);
 	}
 
 	boolean repeated(int n) {
-		if (n < 0 || n >= num_addr)
-			return false;
-		return (frame(n*7 + 6) & SSID_H_MASK) != 0;
+		return view.repeated(n);
 	}
 
 	int heard() {
@@ -166,79 +264,16 @@ public class AprsAX25 implements AprsData {
 
 	}
 
-	int control_offset() {
-		return num_addr * 7;
-	}
-
-	int num_control() {
-		return 1;	/* XXX Always 1 for U frame. I and S are harder */
-	}
-
-	int pid_offset() {
-		return control_offset() + num_control();
-	}
-
-	int num_pid() {
-		int c = frame(control_offset());
-
-		if ((c & 0x01) == 0x00 ||		/* I  xxxx xxx0 */
-		    (c & 0xef) == 0x03) {		/* UI 000x 0011 */
-
-			int pid = frame(pid_offset());
-			if (pid == 0xff)
-				return 2;		/* pid 0xff means there's another one */
-			return 1;
-		}
-		return 0;
-	}
-
-	int info_offset() {
-		return control_offset() + num_control() + num_pid();
-	}
-
-	int num_info() {
-		int len;
-
-		len = frame_len - control_offset() - num_control() - num_pid();
-		if (len < 0)
-			return 0;
-		return len;
-	}
-
 	int pid() {
-		if (num_addr >= 2)
-			return frame(pid_offset());
-		return -1;
+		return view.pid();
 	}
 
 	int control() {
-		if (num_addr >= 2)
-			return frame(control_offset());
-		return -1;
-	}
-
-	int c2() {
-		if (num_addr >= 2)
-			return frame(control_offset() + 1);
-		return -1;
+		return view.control();
 	}
 
 	String info() {
-		int	offset;
-		int	len;
-
-		if (num_addr >= 2) {
-			offset = info_offset();
-			len = num_info();
-		} else {
-			offset = 0;
-			len = frame_len;
-		}
-
-		StringBuilder s = new StringBuilder();
-		for (int i = 0; i < len; i++)
-			s.appendCodePoint(frame(offset + i));
-		return s.toString();
+		return view.info();
 	}
 
 	public String toString() {
@@ -273,9 +308,62 @@ public class AprsAX25 implements AprsData {
 		packet.carrier_detect(detect);
 	}
 
-	public void data(byte b) {
-		if (total_len < AX25_MAX_TOTAL_LEN)
-			frame[total_len++] = b;
+	/* Check one byte of the header at offset 'i' */
+	private boolean header(int i, int b) {
+		if (header_addrs == 0) {
+			int	a = i / 7;
+
+			if (i - a * 7 < 6)
+				return address_char(b);
+
+			if ((b & SSID_LAST_MASK) == 0) {
+				/* Too many addresses; take this one as the last
+				 * in case the bit gets fixed
+				 */
+				if (a + 1 < AX25_MAX_ADDRS)
+					return true;
+				header_addrs = AX25_MAX_ADDRS;
+				return false;
+			}
+
+			/* Too few addresses; carry on looking in case the bit
+			 * gets fixed
+			 */
+			if (a + 1 < AX25_MIN_ADDRS)
+				return false;
+			header_addrs = a + 1;
+			header_end = header_addrs * 7 + 2;
+			return true;
+		}
+		if (i == header_addrs * 7)
+			return (b & 0xef) == AX25_UI_FRAME;
+		return b == AX25_PID_NO_LAYER_3;
+	}
+
+	/* Drop the current frame */
+	private boolean abandon() {
+		if (!abandoned) {
+			abandoned = true;
+			rejected_frames++;
+			rejected_bytes += total_len;
+			total_len = 0;
+		}
+		return false;
+	}
+
+	public boolean data(byte b) {
+		if (abandoned || total_len >= AX25_MAX_TOTAL_LEN)
+			return abandon();
+
+		if (validate && total_len < header_end && !header(total_len, b & 0xff))
+			if (++header_bad > (recover ? 2 : 0))
+				return abandon();
+
+		frame[total_len++] = b;
+		crc_2 = crc_1;
+		crc_1 = crc;
+		crc = AprsFcs.update(crc, b);
+		return true;
 	}
 
 	public void start() {
@@ -284,27 +372,166 @@ public class AprsAX25 implements AprsData {
 		total_len = 0;
 		frame_len = 0;
 		num_addr = 0;
+		fixed_bits = 0;
+		crc = AprsFcs.init;
+		header_end = AX25_MAX_ADDRS * 7 + 2;
+		header_addrs = 0;
+		header_bad = 0;
+		abandoned = false;
+	}
+
+	/* Shifted-ASCII callsign character, or trailing space */
+	static boolean address_char(int b) {
+		int	ch = (b & 0xff) >> 1;
+
+		if ((b & 1) != 0)
+			return false;
+		return ('A' <= ch && ch <= 'Z') || ('0' <= ch && ch <= '9') || ch == ' ';
+	}
+
+	/* Text in an information field; Mic-E uses 0x1c-0x1f and
+	 * comments may be UTF-8
+	 */
+	static boolean info_char(int b) {
+		b &= 0xff;
+		return (0x1c <= b && b != 0x7f) || b == '\r' || b == '\n';
+	}
+
+	/* Whether the frame looks like an APRS UI frame carrying
+	 * text. Used to reject repairs which happen to match the FCS of
+	 * what was really noise. The header checks made as the bytes
+	 * arrived let a couple of bad ones through for the repair to
+	 * fix, so they're all made again over the repaired frame
+	 */
+	boolean plausible() {
+		header_addrs = 0;
+		header_end = AX25_MAX_ADDRS * 7 + 2;
+		for (int i = 0; i < header_end; i++)
+			if (i >= frame_len || !header(i, frame(i)))
+				return false;
+		for (int i = header_end; i < frame_len; i++)
+			if (!info_char(frame[i]))
+				return false;
+		return true;
+	}
+
+	/* Flip bit 'k' counting back from the last bit of the frame.
+	 * Bits go out least significant first
+	 */
+	private void flip(int k) {
+		int	t = total_len * 8 - 1 - k;
+
+		frame[t >> 3] ^= (byte) (1 << (t & 7));
+	}
+
+	/* One step of the CRC register with a zero input bit */
+	static int crc_step(int d) {
+		return (d >> 1) ^ ((d & 1) != 0 ? 0x8408 : 0);
+	}
+
+	/*
+	 * Try to fix the frame so that it passes the FCS check. Every
+	 * single and adjacent pair flip is checked against the
+	 * syndrome; if more than one would pass, there's no telling
+	 * which is right and the frame is left alone
+	 */
+	private boolean recover() {
+		int	bits = total_len * 8;
+
+		if (total_len > recover_max_len || !recover_budget.spend(recover_rate, bits)) {
+			recover_skipped++;
+			return false;
+		}
+
+		int	syndrome = crc ^ AprsFcs.residue;
+		int	candidates = 0;
+		int	found = -1;
+		int	width = 0;
+
+		/* Flipping the last bit changes the CRC by the polynomial;
+		 * each bit after a flip shifts that difference along
+		 */
+		for (int k = 0, d = 0x8408; k < bits; k++, d = crc_step(d)) {
+			if (d == syndrome) {
+				candidates++;
+				found = k;
+				width = 1;
+			}
+		}
+
+		if (recover_pairs && pair_budget.spend(recover_pair_rate, bits)) {
+			for (int k = 1, p = 0x8408, d = crc_step(p); k < bits; k++, p = d, d = crc_step(d)) {
+				if ((d ^ p) == syndrome) {
+					candidates++;
+					found = k;
+					width = 2;
+				}
+			}
+		}
+
+		if (candidates != 1) {
+			if (candidates > 1)
+				recover_ambiguous++;
+			recover_failed++;
+			return false;
+		}
+
+		frame_len = total_len - 2;
+		flip(found);
+		if (width == 2)
+			flip(found - 1);
+		if (!plausible()) {
+			flip(found);
+			if (width == 2)
+				flip(found - 1);
+			recover_failed++;
+			return false;
+		}
+		if (width == 2)
+			recovered_pair++;
+		else
+			recovered_single++;
+		fixed_bits = width;
+		return true;
 	}
 
 	public void stop() {
 		if (total_len < AX25_MIN_TOTAL_LEN)
 			return;
 
-		int	transmitted_fcs = frame(total_len - 2) | (frame(total_len - 1) << 8);
-		int	computed_fcs = AprsFcs.fcs(frame, total_len - 2);
+		/* The CRC has been kept up to date as the bytes arrived */
+		boolean	good = crc == AprsFcs.residue;
+		int	computed_fcs = (crc_2 ^ 0xffff) & 0xffff;
 
-		if (transmitted_fcs != computed_fcs)
-			return;
+		if (trace != null) {
+			int	transmitted_fcs = frame(total_len - 2) | (frame(total_len - 1) << 8);
+
+			trace.fcs(good, transmitted_fcs, computed_fcs);
+		}
+
+		if (!good) {
+			if (!recover || !recover())
+				return;
+			computed_fcs = AprsFcs.fcs(frame, 0, total_len - 2);
+		}
 
 		frame_len = total_len - 2;
 		num_addr = num_addr();
+		fcs = computed_fcs;
+		view.set(frame, frame_len, num_addr);
+
+		AprsAprs	aprs = new AprsAprs(this, lazy);
 
-		packet.receive(new AprsAprs(this));
+		packet.receive(aprs);
+		aprs.release();
 	}
 
 	public AprsAX25(AprsPacket packet) {
 		this.packet = packet;
 		frame = new byte[AX25_MAX_TOTAL_LEN];
+		view = new AprsFrame(frame, 0, 0);
 		total_len = 0;
+		crc = AprsFcs.init;
+		header_end = AX25_MAX_ADDRS * 7 + 2;
 	}
 }
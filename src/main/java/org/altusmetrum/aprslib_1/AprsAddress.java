@@ -21,9 +21,87 @@
 
 package org.altusmetrum.aprslib_1;
 
+/*
+ * A station address. Callsigns of up to six characters, which is
+ * all AX.25 can carry, are also packed into a single long 'key':
+ * one byte per character, padded with spaces, and the SSID above
+ * them. Addresses compare and hash on that key, and
+ * AprsAddressTable hands out one shared instance for each key, which
+ * is why addresses are immutable.
+ */
 public class AprsAddress {
-	public String	callsign;
-	public int	ssid;
+	public final String	callsign;
+	public final int	ssid;
+
+	/* Packed callsign and SSID, or 0 if the callsign doesn't fit */
+	public final long	key;
+
+	static final int	ssid_shift = 48;
+
+	/* Key for an AX.25 address field starting at 'offset' */
+	public static long pack(byte[] data, int offset) {
+		long	key = 0;
+		int	i;
+
+		for (i = 0; i < 6; i++) {
+			int	c = (data[offset + i] & 0xff) >> 1;
+
+			if (c <= ' ')
+				break;
+			key |= (long) c << (i * 8);
+		}
+		for (; i < 6; i++)
+			key |= (long) ' ' << (i * 8);
+		return key | (long) ((data[offset + 6] >> 1) & 0xf) << ssid_shift;
+	}
+
+	public static long pack(String callsign, int ssid) {
+		int	len = callsign.length();
+		long	key = 0;
+
+		if (len > 6 || ssid < 0 || ssid > 15)
+			return 0;
+		for (int i = 0; i < 6; i++) {
+			int	c = i < len ? callsign.charAt(i) : ' ';
+
+			if (c > 0x7f || (i < len && c <= ' '))
+				return 0;
+			key |= (long) c << (i * 8);
+		}
+		return key | (long) ssid << ssid_shift;
+	}
+
+	public static String callsign(long key) {
+		char[]	c = new char[6];
+		int	len = 0;
+
+		while (len < 6 && ((key >> (len * 8)) & 0xff) != ' ') {
+			c[len] = (char) ((key >> (len * 8)) & 0xff);
+			len++;
+		}
+		return new String(c, 0, len);
+	}
+
+	public static int ssid(long key) {
+		return (int) (key >> ssid_shift) & 0xf;
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof AprsAddress))
+			return false;
+
+		AprsAddress	a = (AprsAddress) o;
+
+		if (key != 0 || a.key != 0)
+			return key == a.key;
+		return ssid == a.ssid && callsign.equals(a.callsign);
+	}
+
+	public int hashCode() {
+		if (key != 0)
+			return Long.hashCode(key);
+		return callsign.hashCode() * 31 + ssid;
+	}
 
 	public String toString() {
 		if (ssid == 0)
@@ -34,5 +112,12 @@ public class AprsAddress {
 	public AprsAddress(String callsign, int ssid) {
 		this.callsign = callsign;
 		this.ssid = ssid;
+		this.key = pack(callsign, ssid);
+	}
+
+	public AprsAddress(long key) {
+		this.callsign = callsign(key);
+		this.ssid = ssid(key);
+		this.key = key;
 	}
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import java.util.Arrays;
+
+/*
+ * Process-wide table of canonical AprsAddress instances, indexed by
+ * their packed key. The same few thousand stations are heard over
+ * and over, so decoding an address usually finds the existing
+ * instance instead of building a new one and its callsign String.
+ *
+ * Keys live in an open-addressed long array beside the instances.
+ * When the table holds max_size addresses it is emptied and starts
+ * over; instances handed out before then stay valid, and still
+ * compare equal to the new ones by key.
+ */
+public class AprsAddressTable {
+
+	static public boolean	enabled = true;
+
+	/* Addresses held before the table is emptied */
+	static public int	max_size = 8192;
+
+	static private long[]		keys;
+	static private AprsAddress[]	addresses;
+	static private int		mask;
+	static private int		count;
+
+	static public long	hits, misses;
+
+	static private int slot(long key) {
+		return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+	}
+
+	/* Size for max_size entries at no more than half full */
+	static private void allocate() {
+		int	size = 16;
+
+		while (size < max_size * 2)
+			size <<= 1;
+		keys = new long[size];
+		addresses = new AprsAddress[size];
+		mask = size - 1;
+		count = 0;
+	}
+
+	/* The shared address for 'key', which must not be 0 */
+	static public synchronized AprsAddress intern(long key) {
+		if (!enabled)
+			return new AprsAddress(key);
+		if (keys == null || keys.length < max_size * 2)
+			allocate();
+
+		int	i = slot(key);
+
+		for (;;) {
+			long	k = keys[i];
+
+			if (k == key) {
+				hits++;
+				return addresses[i];
+			}
+			if (k == 0)
+				break;
+			i = (i + 1) & mask;
+		}
+		misses++;
+		if (count >= max_size) {
+			clear();
+			i = slot(key);
+		}
+
+		AprsAddress	a = new AprsAddress(key);
+
+		keys[i] = key;
+		addresses[i] = a;
+		count++;
+		return a;
+	}
+
+	/* The shared address equal to 'a', or 'a' itself if it can't be packed */
+	static public AprsAddress intern(AprsAddress a) {
+		if (a.key == 0)
+			return a;
+		return intern(a.key);
+	}
+
+	static public synchronized int size() {
+		return count;
+	}
+
+	static public synchronized void clear() {
+		if (keys != null) {
+			Arrays.fill(keys, 0);
+			Arrays.fill(addresses, null);
+		}
+		count = 0;
+	}
+}
@@ -42,6 +42,12 @@ public class AprsAgc {
 		return (in - 0.5f * (peak + valley)) / (peak - valley);
 	}
 
+	/* Apply AGC to a block of samples in place */
+	public void sample(float[] buf, int off, int len) {
+		for (int i = off; i < off + len; i++)
+			buf[i] = sample(buf[i]);
+	}
+
 	public AprsAgc(float attack, float decay) {
 		this.attack = attack;
 		this.decay = decay;
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Integer AprsAgc. The peak and valley trackers keep 'frac' bits
+ * below the input units so the slow decay still moves them; the
+ * attack and decay rates are Q24. The output is Q15, 0.5 at the
+ * peak and -0.5 at the valley.
+ */
+public class AprsAgcFixed {
+
+	static final int	frac = 8;
+	static final int	q = 24;
+
+	long	attack, decay;
+	long	peak, valley;
+
+	public int sample(int in) {
+		long	x = (long) in << frac;
+
+		if (x >= peak)
+			peak += ((x - peak) * attack) >> q;
+		else
+			peak += ((x - peak) * decay) >> q;
+
+		if (x <= valley)
+			valley += ((x - valley) * attack) >> q;
+		else
+			valley += ((x - valley) * decay) >> q;
+
+		if (peak <= valley)
+			return 0;
+		return (int) ((((x << 1) - peak - valley) << (AprsFilterFixed.q - 1)) / (peak - valley));
+	}
+
+	public void sample(int[] buf, int off, int len) {
+		for (int i = off; i < off + len; i++)
+			buf[i] = sample(buf[i]);
+	}
+
+	public AprsAgcFixed(float attack, float decay) {
+		this.attack = Math.round(attack * (double) (1 << q));
+		this.decay = Math.round(decay * (double) (1 << q));
+		peak = 0;
+		valley = 0;
+	}
+}
@@ -0,0 +1,403 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+/*
+ * This code uses ideas and algorithms from Dire Wolf, an amateur
+ * radio packet TNC which was written by John Langner, WB2OSZ. That
+ * project is also licensed under the GPL, either version 3 of the
+ * License or (at your option) any later version.
+ */
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Tone detectors, postfilter, AGC, slicer, clock recovery and
+ * HDLC framing, fed the conditioned samples from an AprsFrontEnd.
+ *
+ * Uses the option_convolution, option_sliding, option_lowfilter,
+ * option_hysteresis, option_fused, option_packed, option_recover and
+ * option_lazy bits of the AprsDemod options.
+ */
+public class AprsBackEnd {
+
+	boolean	convolution;		/* Select convolution detector instead of Goertzel */
+	boolean lowfilter;		/* Enable lowpass postfilter */
+	boolean sliding;		/* Select sliding Goertzel detector instead of Goertzel */
+	boolean fused;			/* Merge the prefilter into the convolution detectors;
+					 * the 266-tap kernels only keep up with the
+					 * unfused detectors via FFT over whole blocks,
+					 * per-sample demod() is about three times slower */
+	boolean hold;			/* Hold the previous bit inside the hysteresis band */
+
+	/* Input samples to the detectors */
+	AprsRing	input_ring;
+
+	/* Goertzel detectors which operate as a single-bin FFT */
+	AprsGoertzel	mark_g;
+	AprsGoertzel	space_g;
+
+	/* Sliding Goertzel detectors, updated once per sample */
+	AprsSliding	mark_s;
+	AprsSliding	space_s;
+
+	/*
+	 * Convolution detectors, each of which is a pair of sin waves
+	 * 90° out of phase. When 'fused' is set, these also include
+	 * the bandpass prefilter and are fed unfiltered samples.
+	 */
+	AprsFilter	mark_cos_filter;
+	AprsFilter	mark_sin_filter;
+	AprsFilter	space_cos_filter;
+	AprsFilter	space_sin_filter;
+
+	/*
+	 * The fused kernels are long enough for FFT convolution over a
+	 * block, which pushes the samples through the filter's own
+	 * ring, so each one gets a ring of its own
+	 */
+	AprsRing	mark_cos_ring, mark_sin_ring;
+	AprsRing	space_cos_ring, space_sin_ring;
+
+	/* Low pass postfilter to smooth out the detector results */
+	AprsFilter	low_filter;
+	AprsRing	mark_ring, space_ring;
+
+	/* Automatic gain control, one for each band to compensate for
+	 * different audio paths
+	 */
+	AprsAgc		mark_agc;
+	AprsAgc		space_agc;
+
+	/*
+	 * PLL used to track the clock by slowly skewing the baud rate
+	 * and phase by watching for zero crossings of the detector
+	 */
+	AprsPll		pll;
+
+	/*
+	 * The output of the PLL feeds into the packet decoder
+	 */
+	AprsHdlc	hdlc;
+
+	/*
+	 * Apply a bit of hysteresis to the decoded bits to reduce
+	 * noise at zero crossings of the detector. Without the
+	 * hysteresis option, demod_prev stays 0 and values inside
+	 * the band decode as a space
+	 */
+	int		demod_prev = 0;
+
+	/* Samples sliced so far, for placing events in the stream */
+	long		samples;
+
+	/*
+	 * Scratch buffers for the block demodulator. Each stage
+	 * runs over a whole block before handing it to the next
+	 */
+	float[]		block_mark = new float[AprsDemod.block_size];
+	float[]		block_space = new float[AprsDemod.block_size];
+	float[]		block_mark_sin;
+	float[]		block_space_sin;
+
+	private float z(float a, float b) {
+		return (float) Math.hypot(a,b);
+	}
+
+	/* Slice one detector output and pass it along to the PLL */
+	private void slice(float demod_out) {
+		int demod_val = demod_prev;
+
+		samples++;
+
+		/* Avoid jitter around zero by adding a bit of hysteresis */
+		if (demod_out > AprsDemod.hysteresis)
+			demod_val = 1;
+		else if (demod_out < -AprsDemod.hysteresis)
+			demod_val = 0;
+
+		if (hold)
+			demod_prev = demod_val;
+
+		/* Pass along to the PLL to detect bits */
+		pll.receive(demod_val, hdlc.in_frame());
+	}
+
+	public void demod(float input) {
+
+		/* The sliding detector needs the sample leaving the window */
+		float expired = 0.0f;
+		if (sliding)
+			expired = input_ring.get(0);
+
+		input_ring.put(input);
+
+		float mark, space;
+
+		if (fused) {
+			mark_cos_ring.put(input);
+			mark_sin_ring.put(input);
+			space_cos_ring.put(input);
+			space_sin_ring.put(input);
+			mark  = z(mark_cos_filter.convolve(mark_cos_ring),
+				  mark_sin_filter.convolve(mark_sin_ring));
+			space = z(space_cos_filter.convolve(space_cos_ring),
+				  space_sin_filter.convolve(space_sin_ring));
+		} else if (convolution) {
+			mark  = z(mark_cos_filter.convolve(input_ring),
+				  mark_sin_filter.convolve(input_ring));
+			space = z(space_cos_filter.convolve(input_ring),
+				  space_sin_filter.convolve(input_ring));
+		} else if (sliding) {
+			mark  = mark_s.filter(input, expired);
+			space = space_s.filter(input, expired);
+		} else {
+			mark  = mark_g.filter(input_ring);
+			space = space_g.filter(input_ring);
+		}
+
+		if (lowfilter) {
+			mark_ring.put(mark);
+			space_ring.put(space);
+
+			mark  = low_filter.convolve(mark_ring);
+			space = low_filter.convolve(space_ring);
+		}
+
+		/* AGC mark and space separately */
+		mark  = mark_agc.sample(mark);
+		space = space_agc.sample(space);
+
+		/* see which is bigger */
+		slice(mark - space);
+	}
+
+	/* Demodulate a block of samples. The result is equivalent to
+	 * calling demod(float) on each sample in turn, to within float
+	 * rounding: long filters run as FFT convolutions over a block
+	 */
+	public void demod(float[] buf, int off, int len) {
+		while (len > 0) {
+			int n = Math.min(len, AprsDemod.block_size);
+			demod_block(buf, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	private void demod_block(float[] input, int off, int len) {
+		float[] mark = block_mark;
+		float[] space = block_space;
+
+		if (fused) {
+			float[] mark_sin = block_mark_sin;
+			float[] space_sin = block_space_sin;
+
+			mark_cos_filter.convolve(mark_cos_ring, input, off, mark, 0, len);
+			mark_sin_filter.convolve(mark_sin_ring, input, off, mark_sin, 0, len);
+			space_cos_filter.convolve(space_cos_ring, input, off, space, 0, len);
+			space_sin_filter.convolve(space_sin_ring, input, off, space_sin, 0, len);
+			for (int i = 0; i < len; i++) {
+				mark[i] = z(mark[i], mark_sin[i]);
+				space[i] = z(space[i], space_sin[i]);
+			}
+		} else if (convolution) {
+			for (int i = 0; i < len; i++) {
+				input_ring.put(input[off + i]);
+				mark[i]  = z(mark_cos_filter.convolve(input_ring),
+					     mark_sin_filter.convolve(input_ring));
+				space[i] = z(space_cos_filter.convolve(input_ring),
+					     space_sin_filter.convolve(input_ring));
+			}
+		} else if (sliding) {
+			for (int i = 0; i < len; i++) {
+				float expired = input_ring.get(0);
+				input_ring.put(input[off + i]);
+				mark[i]  = mark_s.filter(input[off + i], expired);
+				space[i] = space_s.filter(input[off + i], expired);
+			}
+		} else {
+			for (int i = 0; i < len; i++) {
+				input_ring.put(input[off + i]);
+				mark[i]  = mark_g.filter(input_ring);
+				space[i] = space_g.filter(input_ring);
+			}
+		}
+
+		if (lowfilter) {
+			low_filter.convolve(mark_ring, mark, 0, mark, 0, len);
+			low_filter.convolve(space_ring, space, 0, space, 0, len);
+		}
+
+		mark_agc.sample(mark, 0, len);
+		space_agc.sample(space, 0, len);
+
+		for (int i = 0; i < len; i++)
+			slice(mark[i] - space[i]);
+	}
+
+	/* Attach a trace to the deframer and, if it's feeding one, the
+	 * AX.25 decoder. null detaches it
+	 */
+	public void trace(AprsTrace trace) {
+		hdlc.trace = trace;
+		if (hdlc.data instanceof AprsAX25)
+			((AprsAX25) hdlc.data).trace = trace;
+	}
+
+	public float baud_rate() {
+		return pll.baud_rate();
+	}
+
+	/* Deliver the bits the PLL is holding once the input is done */
+	public void flush() {
+		pll.flush();
+	}
+
+	/* Samples of silence needed to push a packet through the
+	 * detector and postfilter
+	 */
+	public int delay() {
+		int	delay = (input_ring.length() + 1) / 2;
+
+		if (lowfilter)
+			delay += (mark_ring.length() + 1) / 2;
+		return delay;
+	}
+
+	/*
+	 * Build a back end for the output of 'front'. With the fused
+	 * option, and a front end which is not prefiltering, the
+	 * prefilter is folded into the convolution detectors instead.
+	 */
+	public AprsBackEnd(AprsData data, AprsFrontEnd front, int options) {
+		float	sample_rate = front.sample_rate();
+		int	factor = front.factor();
+
+		this.convolution = (options & AprsDemod.option_convolution) != 0;
+		this.lowfilter = (options & AprsDemod.option_lowfilter) != 0;
+		this.sliding = (options & AprsDemod.option_sliding) != 0;
+		this.hold = (options & AprsDemod.option_hysteresis) != 0;
+
+		/* Fusing only works with the convolution detectors, and
+		 * the decimator already combines the prefilter with
+		 * another stage
+		 */
+		this.fused = ((options & AprsDemod.option_fused) != 0 &&
+			      (options & AprsDemod.option_prefilter) != 0 &&
+			      convolution && !front.decimate && !front.prefilter);
+
+		int	sample_filter_len;
+
+		if (convolution) {
+			sample_filter_len = AprsDemod.decimated_len(25 * 3, factor);
+
+			mark_cos_filter = new AprsFilter(AprsFilter.filter_cos,
+							 AprsFilter.window_cosine,
+							 sample_filter_len,
+							 sample_rate,
+							 AprsDemod.mark_freq);
+			mark_sin_filter = new AprsFilter(AprsFilter.filter_sin,
+							 AprsFilter.window_cosine,
+							 sample_filter_len,
+							 sample_rate,
+							 AprsDemod.mark_freq);
+			space_cos_filter = new AprsFilter(AprsFilter.filter_cos,
+							  AprsFilter.window_cosine,
+							  sample_filter_len,
+							  sample_rate,
+							  AprsDemod.space_freq);
+			space_sin_filter = new AprsFilter(AprsFilter.filter_sin,
+							  AprsFilter.window_cosine,
+							  sample_filter_len,
+							  sample_rate,
+							  AprsDemod.space_freq);
+
+			/* Apply the prefilter to the detector kernels once
+			 * here instead of to every sample
+			 */
+			if (fused) {
+				AprsFilter	pre_filter = AprsFrontEnd.bandpass(sample_rate);
+
+				mark_cos_filter = pre_filter.cascade(mark_cos_filter);
+				mark_sin_filter = pre_filter.cascade(mark_sin_filter);
+				space_cos_filter = pre_filter.cascade(space_cos_filter);
+				space_sin_filter = pre_filter.cascade(space_sin_filter);
+
+				sample_filter_len = mark_cos_filter.length();
+
+				mark_cos_ring = new AprsRing(sample_filter_len);
+				mark_sin_ring = new AprsRing(sample_filter_len);
+				space_cos_ring = new AprsRing(sample_filter_len);
+				space_sin_ring = new AprsRing(sample_filter_len);
+				block_mark_sin = new float[AprsDemod.block_size];
+				block_space_sin = new float[AprsDemod.block_size];
+			}
+		} else if (sliding) {
+			sample_filter_len = AprsDemod.decimated_len(77, factor);
+
+			mark_s = new AprsSliding(sample_rate, AprsDemod.mark_freq, sample_filter_len);
+			space_s = new AprsSliding(sample_rate, AprsDemod.space_freq, sample_filter_len);
+		} else {
+			sample_filter_len = AprsDemod.decimated_len(77, factor);
+
+			mark_g = new AprsGoertzel(sample_rate, AprsDemod.mark_freq, sample_filter_len);
+			space_g = new AprsGoertzel(sample_rate, AprsDemod.space_freq, sample_filter_len);
+		}
+
+		input_ring = new AprsRing(sample_filter_len);
+
+		if (lowfilter) {
+			int	low_filter_len = AprsDemod.decimated_len(21 * 3, factor);
+
+			low_filter = new AprsFilter(AprsFilter.filter_lowpass,
+						    AprsFilter.window_kaiser,
+						    low_filter_len,
+						    sample_rate,
+						    1.16f * AprsDemod.baud_rate);
+
+			mark_ring = new AprsRing(low_filter_len);
+			space_ring = new AprsRing(low_filter_len);
+		}
+
+		/* The AGC constants are per sample; keep the same time
+		 * constants when running at the decimated rate
+		 */
+		float	attack = 1.0f - (float) Math.pow(1.0f - AprsDemod.agc_attack, factor);
+		float	decay = 1.0f - (float) Math.pow(1.0f - AprsDemod.agc_decay, factor);
+
+		mark_agc = new AprsAgc(attack, decay);
+		space_agc = new AprsAgc(attack, decay);
+
+		if (data instanceof AprsAX25) {
+			AprsAX25	ax25 = (AprsAX25) data;
+
+			ax25.recover = (options & AprsDemod.option_recover) != 0;
+			ax25.lazy = (options & AprsDemod.option_lazy) != 0;
+		}
+
+		if ((options & AprsDemod.option_packed) != 0) {
+			AprsDeframer	deframer = new AprsDeframer(data);
+
+			hdlc = deframer;
+			pll = new AprsPll(deframer, sample_rate, AprsDemod.baud_rate);
+		} else {
+			hdlc = new AprsHdlc(data);
+			pll = new AprsPll(hdlc, sample_rate, AprsDemod.baud_rate);
+		}
+	}
+
+	public AprsBackEnd(AprsPacket packet, AprsFrontEnd front, int options) {
+		this(new AprsAX25(packet), front, options);
+	}
+}
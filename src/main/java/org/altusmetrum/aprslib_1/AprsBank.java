@@ -0,0 +1,318 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Bank of demodulators with different options all fed the same
+ * audio. Each variant recovers some packets the others miss; the
+ * bank runs them on a pool of threads, one block at a time, and
+ * merges what they decode. Variants with the same prefilter and
+ * decimation share one AprsFrontEnd. Packets with the same FCS seen within
+ * 'window' seconds of each other are reported once, after the
+ * window closes, with 'variants' holding a bit for each variant
+ * which decoded it. Carrier detect is on while any variant sees a
+ * carrier; its changes are delivered in sample order with the
+ * packets around them.
+ */
+public class AprsBank {
+
+	static final int	d = AprsDemod.default_options;
+	static final int	iir = ((AprsDemod.default_options & ~AprsDemod.option_prefilter) |
+				       AprsDemod.option_preiir);
+
+	static public final int[] default_variants = {
+		d,
+		d | AprsDemod.option_convolution,
+		d | AprsDemod.option_sliding,
+		d | AprsDemod.option_hysteresis,
+		d | AprsDemod.option_convolution | AprsDemod.option_hysteresis,
+		d & ~AprsDemod.option_lowfilter,
+		iir,
+		iir | AprsDemod.option_convolution,
+	};
+
+	static public final float	default_window = 0.5f;
+
+	/* A packet, or a carrier detect change if packet is null, and
+	 * the input sample where it happened
+	 */
+	static class event {
+		variant		from;
+		AprsAprs	packet;
+		boolean		carrier;
+		long		at;
+
+		event(variant from, AprsAprs packet, boolean carrier, long at) {
+			this.from = from;
+			this.packet = packet;
+			this.carrier = carrier;
+			this.at = at;
+		}
+	}
+
+	static final Comparator<event>	by_sample = new Comparator<event>() {
+			public int compare(event a, event b) {
+				return Long.compare(a.at, b.at);
+			}
+		};
+
+	/* One detector/slicer chain and what it has decoded in the
+	 * current block
+	 */
+	class variant implements AprsPacket, Callable<Void> {
+		int		bit;
+		AprsFrontEnd	front;
+		AprsBackEnd	back;
+		List<event>	received = new ArrayList<event>();
+		boolean		carrier;
+
+		/* Input sample of the back end's latest output */
+		long at() {
+			return back.samples * front.factor;
+		}
+
+		/* Work for the next call */
+		float[]		buf;
+		int		len;
+
+		public void receive(AprsAprs packet) {
+			/* Delivered after the frame buffer is reused */
+			packet.keep();
+			received.add(new event(this, packet, false, at()));
+		}
+
+		public void carrier_detect(boolean detect) {
+			received.add(new event(this, null, detect, at()));
+		}
+
+		public Void call() {
+			back.demod(buf, 0, len);
+			return null;
+		}
+
+		variant(int bit, AprsFrontEnd front, int options) {
+			this.bit = bit;
+			this.front = front;
+			back = new AprsBackEnd(this, front, options);
+			front.add(back);
+		}
+	}
+
+	/* A packet waiting for its window to close, or a carrier
+	 * detect change waiting for the packets before it
+	 */
+	class pending {
+		AprsAprs	packet;
+		boolean		carrier;
+		long		seen;
+
+		pending(AprsAprs packet, boolean carrier, long seen) {
+			this.packet = packet;
+			this.carrier = carrier;
+			this.seen = seen;
+		}
+	}
+
+	AprsPacket		packet;
+	List<AprsFrontEnd>	fronts = new ArrayList<AprsFrontEnd>();
+	variant[]		variants;
+	List<variant>		tasks;
+	ExecutorService		executor;
+
+	long			position;	/* samples processed so far */
+	long			window;		/* dedupe window in samples */
+	List<pending>		pending = new ArrayList<pending>();
+	List<event>		events = new ArrayList<event>();
+	boolean			carrier;
+
+	/* Run every variant over the current work, in parallel if
+	 * there's a pool
+	 */
+	private void run() {
+		if (executor == null) {
+			for (variant v : variants)
+				v.call();
+			return;
+		}
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/* Collect what each variant decoded in sample order, folding
+	 * duplicate packets into the pending entry they match and
+	 * turning the variants' carrier changes into changes of
+	 * whether any has a carrier
+	 */
+	private void merge() {
+		for (variant v : variants) {
+			events.addAll(v.received);
+			v.received.clear();
+		}
+		Collections.sort(events, by_sample);
+
+		for (event ev : events) {
+			variant	v = ev.from;
+
+			if (ev.packet == null) {
+				v.carrier = ev.carrier;
+
+				boolean	any = false;
+
+				for (variant o : variants)
+					any |= o.carrier;
+				if (any != carrier) {
+					carrier = any;
+					pending.add(new pending(null, carrier, ev.at));
+				}
+				continue;
+			}
+
+			AprsAprs	p = ev.packet;
+			pending		match = null;
+
+			for (pending e : pending) {
+				if (e.packet != null && e.packet.fcs == p.fcs && ev.at - e.seen <= window) {
+					match = e;
+					break;
+				}
+			}
+			if (match != null) {
+				match.packet.variants |= v.bit;
+			} else {
+				p.variants = v.bit;
+				pending.add(new pending(p, false, ev.at));
+			}
+		}
+		events.clear();
+	}
+
+	/* Hand along packets whose window has closed, or all of them */
+	private void deliver(boolean all) {
+		Iterator<pending>	i = pending.iterator();
+
+		while (i.hasNext()) {
+			pending	e = i.next();
+
+			if (e.packet == null) {
+				i.remove();
+				packet.carrier_detect(e.carrier);
+				continue;
+			}
+			if (!all && position - e.seen < window)
+				break;
+			i.remove();
+			packet.receive(e.packet);
+		}
+	}
+
+	public void demod(float[] buf, int off, int len) {
+		while (len > 0) {
+			int n = Math.min(len, AprsDemod.block_size);
+
+			/* Each front end runs once, then its output goes to
+			 * all of its back ends in parallel
+			 */
+			for (AprsFrontEnd front : fronts) {
+				int m = front.filter(buf, off, n);
+
+				for (variant v : variants) {
+					if (v.front == front) {
+						v.buf = front.output;
+						v.len = m;
+					}
+				}
+			}
+			run();
+			position += n;
+			merge();
+			deliver(false);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/* Flushing is rare enough to do on this thread */
+	public void flush() {
+		for (AprsFrontEnd front : fronts)
+			front.flush();
+		merge();
+		deliver(true);
+	}
+
+	/* Stop the worker threads. The bank can't be used after this */
+	public void close() {
+		if (executor != null)
+			executor.shutdown();
+	}
+
+	public int size() {
+		return variants.length;
+	}
+
+	public AprsBank(AprsPacket packet, float sample_rate, int[] options, int threads, float window) {
+		if (options.length < 1 || options.length > 32)
+			throw new IllegalArgumentException(String.format("Bank needs 1 to 32 variants, not %d", options.length));
+
+		this.packet = packet;
+		this.window = (long) (window * sample_rate);
+
+		Map<Integer,AprsFrontEnd>	by_options = new HashMap<Integer,AprsFrontEnd>();
+
+		variants = new variant[options.length];
+		for (int v = 0; v < options.length; v++) {
+			int		front_options = AprsDemod.front_options(options[v]);
+			AprsFrontEnd	front = by_options.get(front_options);
+
+			if (front == null) {
+				front = new AprsFrontEnd(sample_rate, front_options);
+				by_options.put(front_options, front);
+				fronts.add(front);
+			}
+			variants[v] = new variant(1 << v, front, options[v]);
+		}
+		tasks = Arrays.asList(variants);
+
+		threads = Math.min(threads, options.length);
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "aprs-bank");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		}
+	}
+
+	public AprsBank(AprsPacket packet, float sample_rate, int[] options) {
+		this(packet, sample_rate, options,
+		     Runtime.getRuntime().availableProcessors(), default_window);
+	}
+
+	public AprsBank(AprsPacket packet, float sample_rate) {
+		this(packet, sample_rate, default_variants);
+	}
+}
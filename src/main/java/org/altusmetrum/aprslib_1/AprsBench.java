@@ -0,0 +1,1377 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package org.altusmetrum.aprslib_1;
+
+import java.io.*;
+import java.util.*;
+
+/*
+ * Compare demodulator variants by running them over recorded
+ * audio files, counting decoded packets and measuring how long
+ * each one takes.
+ */
+public class AprsBench {
+
+	static final float	sample_rate = 44100.0f;
+
+	static final int	runs = 3;
+
+	static final String[] default_files = {
+		"src/main/resources/direwolf/test1.wav",
+		"src/main/resources/wmarkow/144800MHz_recording.wav",
+		"src/main/resources/wmarkow/HC12_fox_example.wav",
+	};
+
+	class counter implements AprsPacket {
+		int	count;
+
+		public void receive(AprsAprs packet) {
+			count++;
+		}
+
+		public void carrier_detect(boolean detect) {
+		}
+	}
+
+	static byte[] read_bytes(String file) throws IOException {
+		FileInputStream		f = new FileInputStream(file);
+		ByteArrayOutputStream	b = new ByteArrayOutputStream();
+		byte[]			data = new byte[8192];
+
+		try {
+			int	length;
+			while ((length = f.read(data)) != -1)
+				b.write(data, 0, length);
+		} finally {
+			f.close();
+		}
+
+		return b.toByteArray();
+	}
+
+	static float[] read(String file) throws IOException {
+		byte[]	bytes = read_bytes(file);
+		float[]	samples = new float[bytes.length / 2];
+		AprsTest.samples(bytes, bytes.length, samples);
+		return samples;
+	}
+
+	class result {
+		int	count;
+		long	nanos = Long.MAX_VALUE;
+	}
+
+	result decode(float[] samples, int options) {
+		result		r = new result();
+
+		for (int run = 0; run < runs; run++) {
+			counter		c = new counter();
+			AprsDemod	demod = new AprsDemod(c, sample_rate, options);
+			long		start = System.nanoTime();
+
+			demod.demod(samples, 0, samples.length);
+			demod.flush();
+
+			r.nanos = Math.min(r.nanos, System.nanoTime() - start);
+			r.count = c.count;
+		}
+		return r;
+	}
+
+	void compare(String[] files, String[] names, int[] options) throws IOException {
+		int[]	total = new int[options.length];
+
+		System.out.printf("%-40s", "file");
+		for (int v = 0; v < options.length; v++)
+			System.out.printf(" %22s", names[v]);
+		System.out.printf("\n");
+
+		for (String file : files) {
+			float[]	samples = read(file);
+
+			System.out.printf("%-40s", new File(file).getName());
+			for (int v = 0; v < options.length; v++) {
+				result	r = decode(samples, options[v]);
+				double	rate = samples.length / (r.nanos / 1e9);
+
+				System.out.printf(" %3d pkts %7.2f Msps", r.count, rate / 1e6);
+				total[v] += r.count;
+			}
+			System.out.printf("\n");
+		}
+
+		System.out.printf("%-40s", "total");
+		for (int v = 0; v < options.length; v++)
+			System.out.printf(" %3d pkts %12s", total[v], "");
+		System.out.printf("\n");
+	}
+
+	void detectors(String[] files) throws IOException {
+		int	base = AprsDemod.default_options & ~(AprsDemod.option_convolution | AprsDemod.option_sliding);
+
+		compare(files,
+			new String[] { "goertzel", "convolution", "sliding" },
+			new int[] {
+				base,
+				base | AprsDemod.option_convolution,
+				base | AprsDemod.option_sliding,
+			});
+	}
+
+	void decimate(String[] files) throws IOException {
+		int	base = AprsDemod.default_options & ~(AprsDemod.option_convolution | AprsDemod.option_sliding);
+		int	d = AprsDemod.option_decimate;
+
+		compare(files,
+			new String[] { "goertzel", "goertzel decim", "convolution", "convolution decim" },
+			new int[] {
+				base,
+				base | d,
+				base | AprsDemod.option_convolution,
+				base | AprsDemod.option_convolution | d,
+			});
+	}
+
+	void fused(String[] files) throws IOException {
+		int	conv = AprsDemod.default_options | AprsDemod.option_convolution;
+
+		compare(files,
+			new String[] { "convolution", "convolution fused" },
+			new int[] {
+				conv,
+				conv | AprsDemod.option_fused,
+			});
+	}
+
+	void prefilter(String[] files) throws IOException {
+		int	base = AprsDemod.default_options & ~(AprsDemod.option_prefilter | AprsDemod.option_preiir);
+
+		compare(files,
+			new String[] { "no prefilter", "fir prefilter", "iir prefilter" },
+			new int[] {
+				base,
+				base | AprsDemod.option_prefilter,
+				base | AprsDemod.option_preiir,
+			});
+	}
+
+	class bank_counter implements AprsPacket {
+		int	count;
+		int[]	caught = new int[32];
+
+		public void receive(AprsAprs packet) {
+			count++;
+			for (int v = 0; v < caught.length; v++)
+				if ((packet.variants & (1 << v)) != 0)
+					caught[v]++;
+		}
+
+		public void carrier_detect(boolean detect) {
+		}
+	}
+
+	/* Best time to run 'samples' through a bank with 'threads' workers */
+	long time_bank(float[] samples, int threads, bank_counter c) {
+		long		best = Long.MAX_VALUE;
+
+		for (int run = 0; run < runs; run++) {
+			bank_counter	counter = new bank_counter();
+			AprsBank	bank = new AprsBank(counter, sample_rate, AprsBank.default_variants,
+							    threads, AprsBank.default_window);
+			long		start = System.nanoTime();
+
+			bank.demod(samples, 0, samples.length);
+			bank.flush();
+			best = Math.min(best, System.nanoTime() - start);
+			bank.close();
+
+			c.count = counter.count;
+			c.caught = counter.caught;
+		}
+		return best;
+	}
+
+	void bank(String[] files) throws IOException {
+		int	threads = Runtime.getRuntime().availableProcessors();
+		int	variants = AprsBank.default_variants.length;
+		int	total = 0;
+		int[]	caught = new int[variants];
+
+		System.out.printf("%d variants, %d threads\n", variants, threads);
+		System.out.printf("%-40s %5s %12s %12s  %s\n", "file", "pkts", "1 thread", threads + " threads", "per variant");
+		for (String file : files) {
+			float[]		samples = read(file);
+			double		seconds = samples.length / sample_rate;
+			bank_counter	c = new bank_counter();
+			long		serial = time_bank(samples, 1, c);
+			long		parallel = time_bank(samples, threads, c);
+
+			System.out.printf("%-40s %5d %10.1fx %10.1fx ", new File(file).getName(), c.count,
+					  seconds / (serial / 1e9), seconds / (parallel / 1e9));
+			for (int v = 0; v < variants; v++) {
+				System.out.printf(" %d", c.caught[v]);
+				caught[v] += c.caught[v];
+			}
+			System.out.printf("\n");
+			total += c.count;
+		}
+		System.out.printf("%-40s %5d %25s ", "total", total, "");
+		for (int v = 0; v < variants; v++)
+			System.out.printf(" %d", caught[v]);
+		System.out.printf("\n");
+	}
+
+	result decode_fixed(byte[] pcm, int options) {
+		result		r = new result();
+
+		for (int run = 0; run < runs; run++) {
+			counter		c = new counter();
+			AprsDemodFixed	demod = new AprsDemodFixed(c, sample_rate, options);
+			long		start = System.nanoTime();
+
+			demod.demod(pcm, 0, pcm.length);
+			demod.flush();
+
+			r.nanos = Math.min(r.nanos, System.nanoTime() - start);
+			r.count = c.count;
+		}
+		return r;
+	}
+
+	/* Compare the float and fixed point demodulators. The float
+	 * time includes converting the PCM, as AprsTest does
+	 */
+	void fixed(String[] files) throws IOException {
+		int[]		options = {
+			AprsDemod.default_options,
+			AprsDemod.default_options | AprsDemod.option_convolution,
+		};
+		String[]	names = { "goertzel", "convolution" };
+		int[]		float_total = new int[options.length];
+		int[]		fixed_total = new int[options.length];
+
+		System.out.printf("%-40s", "file");
+		for (int v = 0; v < options.length; v++)
+			System.out.printf(" %22s %22s", names[v] + " float", names[v] + " fixed");
+		System.out.printf("\n");
+
+		for (String file : files) {
+			byte[]	pcm = read_bytes(file);
+			int	n = pcm.length / 2;
+
+			System.out.printf("%-40s", new File(file).getName());
+			for (int v = 0; v < options.length; v++) {
+				long	start = System.nanoTime();
+				float[]	samples = new float[n];
+
+				AprsTest.samples(pcm, pcm.length, samples);
+
+				long	convert = System.nanoTime() - start;
+				result	f = decode(samples, options[v]);
+				result	x = decode_fixed(pcm, options[v]);
+
+				System.out.printf(" %3d pkts %7.2f Msps %3d pkts %7.2f Msps",
+						  f.count, n / ((f.nanos + convert) / 1e9) / 1e6,
+						  x.count, n / (x.nanos / 1e9) / 1e6);
+				float_total[v] += f.count;
+				fixed_total[v] += x.count;
+			}
+			System.out.printf("\n");
+		}
+
+		System.out.printf("%-40s", "total");
+		for (int v = 0; v < options.length; v++)
+			System.out.printf(" %3d pkts %12s %3d pkts %12s", float_total[v], "", fixed_total[v], "");
+		System.out.printf("\n");
+	}
+
+	/* Raw bits from the PLL, recorded on their way to the deframer */
+	class bit_recorder implements AprsBit {
+		AprsBit		next;
+		int[]		bits = new int[1024];
+		int		len;
+
+		public void receive(int bit) {
+			if (len == bits.length)
+				bits = Arrays.copyOf(bits, len * 2);
+			bits[len++] = bit;
+			next.receive(bit);
+		}
+	}
+
+	/* Counts the deframer output so the two paths can be compared */
+	class frame_counter implements AprsData {
+		int	carrier, bytes, starts, stops;
+
+		public void carrier_detect(boolean detect) { carrier++; }
+		public boolean data(byte b) { bytes++; return true; }
+		public void start() { starts++; }
+		public void stop() { stops++; }
+
+		boolean same(frame_counter o) {
+			return carrier == o.carrier && bytes == o.bytes && starts == o.starts && stops == o.stops;
+		}
+	}
+
+	static final int	deframer_repeat = 500;
+
+	void deframer(String[] files) throws IOException {
+		System.out.printf("%-40s %9s %12s %12s %8s\n", "file", "bits", "bit ns", "packed ns", "speedup");
+		for (String file : files) {
+			float[]		samples = read(file);
+			AprsDemod	demod = new AprsDemod(new counter(), sample_rate);
+			bit_recorder	rec = new bit_recorder();
+
+			rec.next = demod.back.pll.receiver;
+			demod.back.pll.receiver = rec;
+			demod.demod(samples, 0, samples.length);
+			demod.flush();
+
+			int		len = rec.len & ~7;
+			int[]		bits = rec.bits;
+			int[]		octets = new int[len / 8];
+
+			for (int i = 0; i < len; i++)
+				octets[i >> 3] |= bits[i] << (i & 7);
+
+			long		bit_ns = Long.MAX_VALUE, packed_ns = Long.MAX_VALUE;
+			frame_counter	bit_count = null, packed_count = null;
+
+			for (int run = 0; run < runs + 2; run++) {
+				long	start = System.nanoTime();
+
+				for (int r = 0; r < deframer_repeat; r++) {
+					bit_count = new frame_counter();
+					AprsDeframer	d = new AprsDeframer(bit_count);
+					for (int i = 0; i < len; i++)
+						d.receive(bits[i]);
+				}
+				bit_ns = Math.min(bit_ns, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				for (int r = 0; r < deframer_repeat; r++) {
+					packed_count = new frame_counter();
+					AprsDeframer	d = new AprsDeframer(packed_count);
+					for (int i = 0; i < octets.length; i++)
+						d.receive_octet(octets[i]);
+				}
+				packed_ns = Math.min(packed_ns, System.nanoTime() - start);
+			}
+			if (!bit_count.same(packed_count)) {
+				System.out.printf("%s: packed deframer mismatch\n", file);
+				System.exit(1);
+			}
+			System.out.printf("%-40s %9d %12.2f %12.2f %8.2f\n", new File(file).getName(), len,
+					  (double) bit_ns / (len * deframer_repeat),
+					  (double) packed_ns / (len * deframer_repeat),
+					  (double) bit_ns / packed_ns);
+		}
+	}
+
+	static final int	fcs_frames = 20000;
+
+	static int fcs_sink;
+
+	/* Verify a set of random frames with the byte-at-a-time and the
+	 * sliced CRC, as when replaying a KISS capture or an archive
+	 */
+	void fcs() {
+		Random	r = new Random(0);
+		int[]	offs = new int[fcs_frames];
+		int[]	lens = new int[fcs_frames];
+		int	total = 0;
+
+		for (int f = 0; f < fcs_frames; f++) {
+			lens[f] = AprsAX25.AX25_MIN_TOTAL_LEN + r.nextInt(AprsAX25.AX25_MAX_TOTAL_LEN - AprsAX25.AX25_MIN_TOTAL_LEN);
+			offs[f] = total;
+			total += lens[f];
+		}
+
+		byte[]	data = new byte[total];
+
+		r.nextBytes(data);
+
+		/* Make every other frame valid */
+		for (int f = 0; f < fcs_frames; f += 2) {
+			int	fcs = AprsFcs.fcs(data, offs[f], lens[f] - 2);
+
+			data[offs[f] + lens[f] - 2] = (byte) fcs;
+			data[offs[f] + lens[f] - 1] = (byte) (fcs >> 8);
+		}
+
+		long	byte_ns = Long.MAX_VALUE, slice_ns = Long.MAX_VALUE;
+
+		for (int run = 0; run < runs + 2; run++) {
+			long	start = System.nanoTime();
+			int	good = 0;
+
+			for (int f = 0; f < fcs_frames; f++) {
+				int	crc = AprsFcs.init;
+				for (int i = offs[f]; i < offs[f] + lens[f]; i++)
+					crc = AprsFcs.update(crc, data[i]);
+				if (crc == AprsFcs.residue)
+					good++;
+			}
+			byte_ns = Math.min(byte_ns, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			int	sliced_good = 0;
+
+			for (int f = 0; f < fcs_frames; f++)
+				if (AprsFcs.check(data, offs[f], lens[f]))
+					sliced_good++;
+			slice_ns = Math.min(slice_ns, System.nanoTime() - start);
+
+			if (good != sliced_good || good != (fcs_frames + 1) / 2) {
+				System.out.printf("fcs mismatch: %d byte, %d sliced\n", good, sliced_good);
+				System.exit(1);
+			}
+			fcs_sink += good;
+		}
+		System.out.printf("%d frames, %d bytes\n", fcs_frames, total);
+		System.out.printf("%-16s %10.1f MB/s\n", "byte at a time", total / (byte_ns / 1e9) / 1e6);
+		System.out.printf("%-16s %10.1f MB/s\n", "slicing by 8", total / (slice_ns / 1e9) / 1e6);
+	}
+
+	static final int	bench_channels = 8;
+
+	class channel_counter implements AprsPacket {
+		int[]	count = new int[bench_channels];
+
+		public void receive(AprsAprs packet) {
+			count[packet.channel]++;
+		}
+
+		public void carrier_detect(boolean detect) {
+		}
+	}
+
+	/* Decode the files as interleaved channels, each file used
+	 * for every files.length'th channel
+	 */
+	void channels(String[] files) throws IOException {
+		float[][]	inputs = new float[files.length][];
+		int		frames = 0;
+
+		for (int f = 0; f < files.length; f++) {
+			inputs[f] = read(files[f]);
+			frames = Math.max(frames, inputs[f].length);
+		}
+
+		float[]	interleaved = new float[frames * bench_channels];
+
+		for (int c = 0; c < bench_channels; c++) {
+			float[]	in = inputs[c % files.length];
+
+			for (int i = 0; i < in.length; i++)
+				interleaved[i * bench_channels + c] = in[i];
+		}
+
+		int		threads = Runtime.getRuntime().availableProcessors();
+		channel_counter	counter = new channel_counter();
+		AprsChannels	engine = new AprsChannels(counter, sample_rate, bench_channels,
+							  AprsDemod.default_options, threads);
+		long		start = System.nanoTime();
+
+		engine.demod_interleaved(interleaved, 0, frames);
+		engine.flush();
+
+		long		nanos = System.nanoTime() - start;
+
+		engine.close();
+
+		System.out.printf("%d channels, %d threads, %.1fx real time overall\n",
+				  bench_channels, threads, (frames / sample_rate) / (nanos / 1e9));
+		System.out.printf("%7s %-40s %5s %9s\n", "channel", "file", "pkts", "headroom");
+		for (int c = 0; c < bench_channels; c++)
+			System.out.printf("%7d %-40s %5d %8.1fx\n", c,
+					  new File(files[c % files.length]).getName(),
+					  counter.count[c], engine.headroom(c));
+	}
+
+	static final int	cache_decoders = 32;
+
+	/* Time building a set of decoders with and without sharing
+	 * the coefficient tables
+	 */
+	long time_startup(int options, boolean cached) {
+		long	best = Long.MAX_VALUE;
+
+		AprsCoeffCache.enabled = cached;
+		try {
+			for (int run = 0; run < runs + 2; run++) {
+				AprsCoeffCache.clear();
+
+				long	start = System.nanoTime();
+
+				for (int d = 0; d < cache_decoders; d++)
+					new AprsDemod(new counter(), sample_rate, options);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+		} finally {
+			AprsCoeffCache.enabled = true;
+		}
+		return best;
+	}
+
+	void cache() {
+		int[]		options = {
+			AprsDemod.default_options,
+			AprsDemod.default_options | AprsDemod.option_convolution,
+			AprsDemod.default_options | AprsDemod.option_decimate,
+		};
+		String[]	names = { "goertzel", "convolution", "decimate" };
+
+		System.out.printf("%d decoders\n", cache_decoders);
+		System.out.printf("%-12s %12s %12s %8s %8s\n", "options", "uncached ms", "cached ms", "speedup", "tables");
+		for (int v = 0; v < options.length; v++) {
+			long	uncached = time_startup(options[v], false);
+			long	cached = time_startup(options[v], true);
+
+			System.out.printf("%-12s %12.3f %12.3f %8.2f %8d\n",
+					  names[v], uncached / 1e6, cached / 1e6,
+					  (double) uncached / cached, AprsCoeffCache.size());
+		}
+	}
+
+	/* Time the dot product at each of the filter lengths used by AprsDemod */
+	static final int[] dot_lengths = { 64 * 3, 77, 21 * 3 };
+
+	static final int dot_iterations = 2000000;
+
+	static float dot_sink;
+
+	static long time_dot(boolean vector, float[] a, float[] b, int len) {
+		long	best = Long.MAX_VALUE;
+
+		for (int run = 0; run < runs + 2; run++) {
+			long	start = System.nanoTime();
+			float	sum = 0.0f;
+
+			for (int i = 0; i < dot_iterations; i++) {
+				int off = i & 63;
+				if (vector)
+					sum += AprsDot.dot(a, off, b, 0, len);
+				else
+					sum += AprsDot.scalar(a, off, b, 0, len);
+			}
+			dot_sink += sum;
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	void dot() {
+		Random	r = new Random(0);
+
+		System.out.printf("vector API %s\n", AprsDot.vector() ? "enabled" : "not available");
+		System.out.printf("%6s %12s %12s %8s\n", "taps", "scalar ns", "dot ns", "speedup");
+		for (int len : dot_lengths) {
+			float[]	a = new float[len + 64];
+			float[]	b = new float[len];
+
+			for (int i = 0; i < a.length; i++)
+				a[i] = r.nextFloat() - 0.5f;
+			for (int i = 0; i < b.length; i++)
+				b[i] = r.nextFloat() - 0.5f;
+
+			double	scalar = (double) time_dot(false, a, b, len) / dot_iterations;
+			double	dot = (double) time_dot(true, a, b, len) / dot_iterations;
+
+			System.out.printf("%6d %12.2f %12.2f %7.2fx\n", len, scalar, dot, scalar / dot);
+		}
+	}
+
+	/* Compare direct and FFT block filtering for a range of filter lengths */
+	static final int[] fft_taps = { 21 * 3, 64 * 3, 512, 1024, 2048 };
+
+	static final int fft_block = AprsDemod.block_size;
+
+	static final int fft_blocks = 2000;
+
+	void fft() {
+		Random	r = new Random(0);
+		float[]	in = new float[fft_block * fft_blocks];
+
+		for (int i = 0; i < in.length; i++)
+			in[i] = r.nextFloat() - 0.5f;
+
+		System.out.printf("%6s %6s %12s %12s %12s\n", "taps", "fft", "direct ns", "block ns", "max error");
+		for (int taps : fft_taps) {
+			AprsFilter	f = new AprsFilter(AprsFilter.filter_bandpass,
+							   AprsFilter.window_kaiser,
+							   taps, sample_rate, 900.0f, 2500.0f);
+			float[]		direct = new float[in.length];
+			float[]		block = new float[in.length];
+			long		direct_ns = Long.MAX_VALUE;
+			long		block_ns = Long.MAX_VALUE;
+
+			for (int run = 0; run < runs; run++) {
+				AprsRing	ring = new AprsRing(taps);
+				long		start = System.nanoTime();
+
+				for (int b = 0; b < fft_blocks; b++)
+					f.convolve_direct(ring, in, b * fft_block, direct, b * fft_block, fft_block);
+				direct_ns = Math.min(direct_ns, System.nanoTime() - start);
+
+				ring = new AprsRing(taps);
+				start = System.nanoTime();
+				for (int b = 0; b < fft_blocks; b++)
+					f.convolve(ring, in, b * fft_block, block, b * fft_block, fft_block);
+				block_ns = Math.min(block_ns, System.nanoTime() - start);
+			}
+
+			float	error = 0.0f;
+			for (int i = 0; i < in.length; i++)
+				error = Math.max(error, Math.abs(direct[i] - block[i]));
+
+			System.out.printf("%6d %6s %12.2f %12.2f %12.3g\n",
+					  taps, f.uses_fft() ? "yes" : "no",
+					  (double) direct_ns / in.length,
+					  (double) block_ns / in.length,
+					  error);
+		}
+	}
+
+	/*
+	 * Check that the folded symmetric kernels match the full dot
+	 * product for each of the filters AprsDemod builds, and time
+	 * both, to see whether AprsFilter.fold_kernels pays on this
+	 * machine. Exits with an error if any result differs by more
+	 * than float rounding.
+	 */
+	static final float fold_tolerance = 1e-5f;
+
+	static final int fold_samples = 1000000;
+
+	void fold() {
+		AprsFilter[]	filters = {
+			new AprsFilter(AprsFilter.filter_lowpass, AprsFilter.window_kaiser,
+				       21 * 3, sample_rate, 1.16f * AprsDemod.baud_rate),
+			new AprsFilter(AprsFilter.filter_bandpass, AprsFilter.window_kaiser,
+				       64 * 3, sample_rate, 924.0f, 2476.0f),
+			new AprsFilter(AprsFilter.filter_cos, AprsFilter.window_cosine,
+				       25 * 3, sample_rate, AprsDemod.mark_freq),
+			new AprsFilter(AprsFilter.filter_sin, AprsFilter.window_cosine,
+				       25 * 3, sample_rate, AprsDemod.space_freq),
+		};
+		String[]	names = { "lowpass", "bandpass", "cos", "sin" };
+		Random		r = new Random(0);
+		float[]		in = new float[fold_samples];
+		boolean		ok = true;
+
+		for (int i = 0; i < in.length; i++)
+			in[i] = r.nextFloat() - 0.5f;
+
+		System.out.printf("%-10s %6s %6s %12s %12s %12s\n", "filter", "taps", "sym", "full ns", "folded ns", "max error");
+		for (int f = 0; f < filters.length; f++) {
+			AprsFilter	filter = filters[f];
+			long		full_ns = Long.MAX_VALUE, fold_ns = Long.MAX_VALUE;
+			float		error = 0.0f;
+			float		sink = 0.0f;
+
+			for (int run = 0; run < runs; run++) {
+				AprsRing	ring = new AprsRing(filter.length());
+				long		start = System.nanoTime();
+				for (int i = 0; i < in.length; i++) {
+					ring.put(in[i]);
+					sink += filter.convolve_full(ring);
+				}
+				full_ns = Math.min(full_ns, System.nanoTime() - start);
+
+				ring = new AprsRing(filter.length());
+				start = System.nanoTime();
+				for (int i = 0; i < in.length; i++) {
+					ring.put(in[i]);
+					sink += filter.convolve_folded(ring);
+				}
+				fold_ns = Math.min(fold_ns, System.nanoTime() - start);
+			}
+			dot_sink += sink;
+
+			AprsRing	ring = new AprsRing(filter.length());
+			for (int i = 0; i < in.length; i++) {
+				ring.put(in[i]);
+				error = Math.max(error, Math.abs(filter.convolve_folded(ring) - filter.convolve_full(ring)));
+			}
+			if (error > fold_tolerance)
+				ok = false;
+
+			System.out.printf("%-10s %6d %6s %12.2f %12.2f %12.3g\n",
+					  names[f], filter.length(), filter.symmetric() ? "yes" : "no",
+					  (double) full_ns / in.length, (double) fold_ns / in.length, error);
+		}
+		if (!ok) {
+			System.out.printf("folded filter mismatch\n");
+			System.exit(1);
+		}
+	}
+
+	/*
+	 * Decode with and without the AX.25 header checks, counting the
+	 * frames abandoned, the bytes they had buffered and the bytes
+	 * the deframer then skipped
+	 */
+	void reject(String[] files) throws IOException {
+		System.out.printf("%-40s %8s %6s %8s %8s %8s %10s\n",
+				  "file", "validate", "pkts", "frames", "buffered", "skipped", "Msps");
+		for (String file : files) {
+			float[]	samples = read(file);
+
+			for (int v = 0; v < 2; v++) {
+				counter		count = null;
+				AprsAX25	ax25 = null;
+				AprsDemod	demod = null;
+				long		ns = Long.MAX_VALUE;
+
+				for (int run = 0; run < runs; run++) {
+					count = new counter();
+					ax25 = new AprsAX25(count);
+					ax25.validate = v != 0;
+					demod = new AprsDemod(ax25, sample_rate, AprsDemod.default_options);
+
+					long	start = System.nanoTime();
+					demod.demod(samples, 0, samples.length);
+					demod.flush();
+					ns = Math.min(ns, System.nanoTime() - start);
+				}
+				System.out.printf("%-40s %8s %6d %8d %8d %8d %10.2f\n",
+						  new File(file).getName(), v != 0 ? "yes" : "no",
+						  count.count, ax25.rejected_frames, ax25.rejected_bytes,
+						  demod.back.hdlc.skipped_bits / 8,
+						  samples.length / (ns / 1e3));
+			}
+		}
+	}
+
+	static final int	recover_frames = 5000;
+
+	class recover_counter implements AprsPacket {
+		int	count;
+		int	fixed_bits;
+
+		public void receive(AprsAprs packet) {
+			count++;
+			fixed_bits += packet.fixed_bits;
+		}
+
+		public void carrier_detect(boolean detect) {
+		}
+	}
+
+	static void recover_address(byte[] frame, int off, String call, boolean last) {
+		for (int i = 0; i < 6; i++)
+			frame[off + i] = (byte) ((i < call.length() ? call.charAt(i) : ' ') << 1);
+		frame[off + 6] = (byte) (0x60 | (last ? AprsAX25.SSID_LAST_MASK : 0));
+	}
+
+	/* A valid APRS UI frame with a random info field */
+	static byte[] recover_frame(Random r) {
+		byte[]	frame = new byte[16 + 10 + r.nextInt(90) + 2];
+		int	len = frame.length - 2;
+
+		recover_address(frame, 0, "APRS", false);
+		recover_address(frame, 7, "N0CALL", true);
+		frame[14] = AprsAX25.AX25_UI_FRAME;
+		frame[15] = (byte) AprsAX25.AX25_PID_NO_LAYER_3;
+		for (int i = 16; i < len; i++)
+			frame[i] = (byte) (' ' + r.nextInt(95));
+
+		int	fcs = AprsFcs.fcs(frame, 0, len);
+
+		frame[len] = (byte) fcs;
+		frame[len + 1] = (byte) (fcs >> 8);
+		return frame;
+	}
+
+	static void recover_flip(byte[] frame, int t) {
+		frame[t >> 3] ^= (byte) (1 << (t & 7));
+	}
+
+	/* Feed 'damaged' through 'ax25', returning how many of the
+	 * packets delivered don't match what was 'sent'
+	 */
+	static int recover_run(AprsAX25 ax25, recover_counter counter, byte[][] sent, byte[][] damaged) {
+		int	wrong = 0;
+
+		for (int f = 0; f < damaged.length; f++) {
+			int	before = counter.count;
+
+			ax25.start();
+			for (byte b : damaged[f])
+				ax25.data(b);
+			ax25.stop();
+			if (counter.count != before &&
+			    !Arrays.equals(Arrays.copyOf(ax25.frame, ax25.total_len), sent[f]))
+				wrong++;
+			ax25.total_len = 0;
+		}
+		return wrong;
+	}
+
+	/*
+	 * Damage synthetic frames with one bit, two adjacent bits, two
+	 * scattered bits and three scattered bits flipped and see how many AprsAX25 can
+	 * repair, how many repairs come out with the wrong contents and
+	 * how long each failed frame costs. Frames of random bytes check
+	 * that noise doesn't turn into packets. The last column shows
+	 * the wrong repairs with the pair search turned off, as it is
+	 * once recover_pair_rate runs out
+	 */
+	void recover() {
+		String[]	names = { "clean", "single", "adjacent", "double", "triple", "noise" };
+		Random		r = new Random(0);
+
+		System.out.printf("%-10s %8s %8s %8s %8s %12s %8s\n", "damage", "frames", "good", "fixed", "wrong", "us/frame", "singles");
+		for (int kind = 0; kind < names.length; kind++) {
+			byte[][]	sent = new byte[recover_frames][];
+			byte[][]	damaged = new byte[recover_frames][];
+
+			for (int f = 0; f < recover_frames; f++) {
+				sent[f] = recover_frame(r);
+				damaged[f] = sent[f].clone();
+
+				int	bits = sent[f].length * 8;
+
+				switch (kind) {
+				case 1:
+					recover_flip(damaged[f], r.nextInt(bits));
+					break;
+				case 2: {
+					int	t = r.nextInt(bits - 1);
+
+					recover_flip(damaged[f], t);
+					recover_flip(damaged[f], t + 1);
+					break;
+				}
+				case 3:
+				case 4:
+					for (int i = 0; i < kind - 1; i++)
+						recover_flip(damaged[f], r.nextInt(bits));
+					break;
+				case 5:
+					r.nextBytes(damaged[f]);
+					break;
+				}
+			}
+
+			recover_counter	counter = new recover_counter();
+			AprsAX25	ax25 = new AprsAX25(counter);
+
+			ax25.recover = true;
+			ax25.recover_rate = 1000000000L;
+			ax25.recover_pair_rate = 1000000000L;
+
+			long	start = System.nanoTime();
+			int	wrong = recover_run(ax25, counter, sent, damaged);
+			long	ns = System.nanoTime() - start;
+
+			recover_counter	single_counter = new recover_counter();
+			AprsAX25	singles = new AprsAX25(single_counter);
+
+			singles.recover = true;
+			singles.recover_pairs = false;
+			singles.recover_rate = 1000000000L;
+
+			int	single_wrong = recover_run(singles, single_counter, sent, damaged);
+
+			System.out.printf("%-10s %8d %8d %8d %8d %12.2f %8d\n", names[kind], recover_frames,
+					  counter.count, counter.fixed_bits, wrong,
+					  ns / 1e3 / recover_frames, single_wrong);
+		}
+	}
+
+	/* Information fields of the common packet types, with the
+	 * destination each one goes to. Where given, the message type
+	 * and the latitude, longitude, speed (mph), course, altitude
+	 * (ft) and range each must decode to follow, '-' for UNKNOWN
+	 */
+	static final String[][]	packet_corpus = {
+		{ "APRS", "!4903.50N/07201.75W-Test 001234",
+		  "Position", "49.058333 -72.029167 - - - -" },
+		{ "APRS", "=4903.50N/07201.75W>088/036/A=001234 Heading north",
+		  "Position", "49.058333 -72.029167 36 88 1234 -" },
+		{ "APRS", "@092345z4903.50N/07201.75W>088/036",
+		  "Position with time", "49.058333 -72.029167 36 88 - -" },
+		{ "APRS", "!/5L!!<*e7>7P[",
+		  "Position", "49.5 -72.75 41.695055 88 - -" },
+		{ "APRS", "=/5L!!<*e7>{?! compressed with range",
+		  "Position", "49.5 -72.75 - - - 20.125314" },
+		{ "S32U6T", "`(_fn\"Oj/]Mobile",
+		  "MIC_E", "33.427333 -12.129 20 251 - -" },
+		{ "APRS", ":N0CALL   :Hello there{001",
+		  "Message", "- - - - - -" },
+		{ "APRS", ";LEADER   *092345z4903.50N/07201.75W>088/036",
+		  "Object", "49.058333 -72.029167 - - - -" },
+		{ "APRS", ">Net Control Center",
+		  "Status Report", "- - - - - -" },
+		{ "APRS", "$GPRMC,123519,A,4807.038,N,01131.000,E,022.4,084.4,230394,003.1,W*6A",
+		  "GPRMC", "48.1173 11.516667 25.77746 84.4 - -" },
+		{ "APRS", "$GPGGA,123519,4807.038,N,01131.000,E,1,08,0.9,545.4,M,46.9,M,,*47",
+		  "GPGGA", "48.1173 11.516667 - - 1789.370079 -" },
+		{ "APRS", "$GNRMC,092751.000,A,5321.6802,N,00630.3371,W,0.06,31.66,280511,,,A*5B",
+		  "GNRMC", "53.361337 -6.505618 0.069047 31.66 - -" },
+		{ "APRS", "$GPGLL,4916.45,N,12311.12,W,225444,A*31",
+		  "GPGLL", "49.274167 -123.185333 - - - -" },
+		{ "APRS", "$GPVTG,054.7,T,034.4,M,005.5,N,010.2,K*48",
+		  "GPVTG", "- - 6.329287 54.7 - -" },
+		{ "APRS", "$GPGLL,4916.45,N,12311.12,W,225444,A*32",
+		  "GPGLL", "- - - - - -" },
+		{ "APRS", "$GPRMC,123519,V,,,,,,,230394,,*33",
+		  "GPRMC", "- - - - - -" },
+		{ "APRS", "$GPZDA,201530.00,04,07,2002,00,00*60",
+		  "GPZDA", "- - - - - -" },
+		{ "APRS", "$",
+		  "Invalid message of type '$'", "- - - - - -" },
+		{ "APRS", "_10090556c220s004g005t077r000p000P000h50b09900wRSW",
+		  "Weather", "- - - - - -" },
+		{ "APRS", "}WB2OSZ>APRS,TCPIP:!4903.50N/07201.75W-",
+		  "Third Party", "- - - - - -" },
+	};
+
+	/* A UI frame from N0CALL carrying 'info', with the FCS */
+	static byte[] packet_frame(String dest, String info) {
+		byte[]	frame = new byte[16 + info.length() + 2];
+		int	len = frame.length - 2;
+
+		recover_address(frame, 0, dest, false);
+		recover_address(frame, 7, "N0CALL", true);
+		frame[14] = AprsAX25.AX25_UI_FRAME;
+		frame[15] = (byte) AprsAX25.AX25_PID_NO_LAYER_3;
+		for (int i = 0; i < info.length(); i++)
+			frame[16 + i] = (byte) info.charAt(i);
+
+		int	fcs = AprsFcs.fcs(frame, 0, len);
+
+		frame[len] = (byte) fcs;
+		frame[len + 1] = (byte) (fcs >> 8);
+		return frame;
+	}
+
+	static final int	lazy_repeat = 20000;
+
+	static int lazy_sink;
+
+	class lazy_reader implements AprsPacket {
+		boolean	all;
+		String	last;
+
+		public void receive(AprsAprs packet) {
+			if (all)
+				packet.decode();
+			lazy_sink += packet.source().ssid;
+			last = packet.toString();
+		}
+
+		public void carrier_detect(boolean detect) {
+		}
+	}
+
+	/* Deliver one frame through 'ax25' */
+	static void packet_deliver(AprsAX25 ax25, byte[] frame) {
+		ax25.start();
+		for (byte b : frame)
+			ax25.data(b);
+		ax25.stop();
+		ax25.total_len = 0;
+	}
+
+	/*
+	 * Time building packets from the corpus when the receiver reads
+	 * only the source address and when it reads everything, with
+	 * eager and lazy decoding. Checks that both decode the same
+	 */
+	void lazy() {
+		byte[][]	frames = new byte[packet_corpus.length][];
+
+		for (int i = 0; i < frames.length; i++)
+			frames[i] = packet_frame(packet_corpus[i][0], packet_corpus[i][1]);
+
+		for (int i = 0; i < frames.length; i++) {
+			String[]	decoded = new String[2];
+
+			for (int l = 0; l < 2; l++) {
+				lazy_reader	reader = new lazy_reader();
+				AprsAX25	ax25 = new AprsAX25(reader);
+
+				ax25.lazy = l != 0;
+				packet_deliver(ax25, frames[i]);
+				decoded[l] = reader.last;
+			}
+			if (decoded[0] == null || !decoded[0].equals(decoded[1])) {
+				System.out.printf("lazy mismatch:\n\t%s\n\t%s\n", decoded[0], decoded[1]);
+				System.exit(1);
+			}
+		}
+
+		long[][]	ns = new long[2][2];
+
+		for (long[] n : ns)
+			Arrays.fill(n, Long.MAX_VALUE);
+
+		for (int run = 0; run < runs + 2; run++) {
+			for (int a = 0; a < 2; a++) {
+				for (int l = 0; l < 2; l++) {
+					lazy_reader	reader = new lazy_reader() {
+							public void receive(AprsAprs packet) {
+								if (all)
+									packet.decode();
+								lazy_sink += packet.source().ssid;
+							}
+						};
+					AprsAX25	ax25 = new AprsAX25(reader);
+
+					reader.all = a != 0;
+					ax25.lazy = l != 0;
+
+					long	start = System.nanoTime();
+					for (int r = 0; r < lazy_repeat; r++)
+						for (byte[] frame : frames)
+							packet_deliver(ax25, frame);
+					ns[a][l] = Math.min(ns[a][l], System.nanoTime() - start);
+				}
+			}
+		}
+
+		System.out.printf("%-10s %12s %12s\n", "reads", "eager ns", "lazy ns");
+		for (int a = 0; a < 2; a++)
+			System.out.printf("%-10s %12.1f %12.1f\n", a != 0 ? "all" : "source",
+					  (double) ns[a][0] / (lazy_repeat * frames.length),
+					  (double) ns[a][1] / (lazy_repeat * frames.length));
+	}
+
+	static final int	parse_repeat = 200000;
+
+	static double		parse_sink;
+
+	/* Bytes allocated by this thread so far, or -1 if the JVM won't say */
+	static long allocated() {
+		java.lang.management.ThreadMXBean	bean = java.lang.management.ManagementFactory.getThreadMXBean();
+
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	static final double	parse_tolerance = 1e-5;
+
+	/* Whether 'got' is 'want' from the corpus, "-" meaning UNKNOWN */
+	static boolean parse_match(String want, double got) {
+		if (want.equals("-"))
+			return got == AprsAprs.UNKNOWN;
+		return Math.abs(got - Double.parseDouble(want)) <= parse_tolerance;
+	}
+
+	/*
+	 * Check a packet, and the AprsInfo decode of it if there is
+	 * one, against the values in its corpus entry
+	 */
+	static boolean parse_check(String[] c, AprsAprs packet, AprsInfo info) {
+		String[]	want = c[3].split(" ");
+		double[]	got = { packet.latitude, packet.longitude, packet.speed_mph,
+				        packet.course, packet.altitude_ft, packet.range };
+		boolean		ok = c[2].equals(packet.message_type);
+
+		for (int i = 0; i < want.length; i++)
+			if (!parse_match(want[i], got[i]))
+				ok = false;
+		if (info != null) {
+			double[]	parsed = { info.latitude, info.longitude, info.speed_mph,
+					           info.course, info.altitude_ft, info.range };
+
+			for (int i = 0; i < want.length; i++)
+				if (!parse_match(want[i], parsed[i]))
+					ok = false;
+		}
+		if (!ok)
+			System.out.printf("mismatch %s: %s %.6f %.6f %.6f %.6f %.6f %.6f\n", c[1],
+					  packet.message_type, got[0], got[1], got[2], got[3], got[4], got[5]);
+		return ok;
+	}
+
+	/*
+	 * Time decoding each packet type in the corpus with AprsInfo,
+	 * and building a complete AprsAprs, and count what each
+	 * allocates. Exits with an error if any packet decodes to
+	 * values other than those in the corpus
+	 */
+	void parse() {
+		boolean	ok = true;
+
+		System.out.printf("%-50s %10s %10s %12s %12s\n", "info", "info ns", "info B", "packet ns", "packet B");
+		for (String[] c : packet_corpus) {
+			byte[]		bytes = packet_frame(c[0], c[1]);
+			AprsFrame	frame = new AprsFrame(bytes, bytes.length - 2, 2);
+			AprsInfo	info = new AprsInfo();
+			lazy_reader	reader = new lazy_reader() {
+					public void receive(AprsAprs packet) {
+						parse_sink += packet.latitude;
+					}
+				};
+			AprsAX25	ax25 = new AprsAX25(reader);
+			long		info_ns = Long.MAX_VALUE, packet_ns = Long.MAX_VALUE;
+			long		info_bytes = 0, packet_bytes = 0;
+
+			/* The view AprsAX25 hands out over the same frame */
+			packet_deliver(ax25, bytes);
+
+			if (c.length > 2) {
+				AprsAprs	packet = new AprsAprs(ax25);
+
+				if (!parse_check(c, packet, info.decode(frame) ? info : null))
+					ok = false;
+			}
+
+			for (int run = 0; run < runs + 2; run++) {
+				long	bytes_0 = allocated();
+				long	start = System.nanoTime();
+
+				for (int r = 0; r < parse_repeat; r++) {
+					if (info.decode(frame))
+						parse_sink += info.latitude;
+				}
+				info_ns = Math.min(info_ns, System.nanoTime() - start);
+				info_bytes = allocated() - bytes_0;
+
+				bytes_0 = allocated();
+				start = System.nanoTime();
+				for (int r = 0; r < parse_repeat; r++)
+					parse_sink += new AprsAprs(ax25).latitude;
+				packet_ns = Math.min(packet_ns, System.nanoTime() - start);
+				packet_bytes = allocated() - bytes_0;
+			}
+			String	name = c[1].length() > 48 ? c[1].substring(0, 45) + "..." : c[1];
+
+			System.out.printf("%-50s %10.1f %10.1f %12.1f %12.1f\n", name,
+					  (double) info_ns / parse_repeat, (double) info_bytes / parse_repeat,
+					  (double) packet_ns / parse_repeat, (double) packet_bytes / parse_repeat);
+		}
+		if (!ok) {
+			System.out.printf("decoded values mismatch\n");
+			System.exit(1);
+		}
+	}
+
+	static final int	address_repeat = 200000;
+
+	static long		address_sink;
+
+	/*
+	 * Time decoding the addresses of the corpus frames into new
+	 * AprsAddress instances and through AprsAddressTable, counting
+	 * what each allocates, and looking each result up in a map
+	 * keyed by station
+	 */
+	void address() {
+		AprsFrame[]	frames = new AprsFrame[packet_corpus.length];
+
+		for (int i = 0; i < frames.length; i++) {
+			byte[]	bytes = packet_frame(packet_corpus[i][0], packet_corpus[i][1]);
+
+			frames[i] = new AprsFrame(bytes, bytes.length - 2, 2);
+		}
+
+		HashMap<AprsAddress,Integer>	stations = new HashMap<AprsAddress,Integer>();
+
+		for (AprsFrame f : frames)
+			for (int n = 0; n < 2; n++)
+				stations.put(f.address(n), n);
+
+		long[]	ns = { Long.MAX_VALUE, Long.MAX_VALUE };
+		long[]	bytes = new long[2];
+
+		for (int run = 0; run < runs + 2; run++) {
+			for (int v = 0; v < 2; v++) {
+				long	bytes_0 = allocated();
+				long	start = System.nanoTime();
+
+				for (int r = 0; r < address_repeat; r++) {
+					for (AprsFrame f : frames) {
+						for (int n = 0; n < 2; n++) {
+							AprsAddress	a;
+
+							if (v == 0)
+								a = new AprsAddress(f.callsign(n), f.ssid(n));
+							else
+								a = f.address(n);
+							address_sink += stations.get(a);
+						}
+					}
+				}
+				ns[v] = Math.min(ns[v], System.nanoTime() - start);
+				bytes[v] = allocated() - bytes_0;
+			}
+		}
+
+		int	count = address_repeat * frames.length * 2;
+
+		System.out.printf("%-10s %12s %12s\n", "", "ns", "bytes");
+		for (int v = 0; v < 2; v++)
+			System.out.printf("%-10s %12.1f %12.1f\n", v == 0 ? "new" : "interned",
+					  (double) ns[v] / count, (double) bytes[v] / count);
+		System.out.printf("table %d addresses, %d hits, %d misses\n",
+				  AprsAddressTable.size(), AprsAddressTable.hits, AprsAddressTable.misses);
+	}
+
+	static final int	dedupe_stations = 1000;
+	static final int	dedupe_copies = 3;
+	static final int	dedupe_rounds = 200;
+
+	/* 'info' from N0CALL, as heard after 'hops' digipeaters */
+	static AprsFrame dedupe_frame(String info, int hops) {
+		int	num_addr = 2 + hops;
+		byte[]	frame = new byte[num_addr * 7 + 2 + info.length()];
+		int	off = num_addr * 7;
+
+		recover_address(frame, 0, "APRS", false);
+		recover_address(frame, 7, "N0CALL", hops == 0);
+		for (int h = 0; h < hops; h++) {
+			recover_address(frame, 14 + h * 7, "WIDE" + (h + 1), h == hops - 1);
+			frame[14 + h * 7 + 6] |= (byte) (AprsAX25.SSID_H_MASK | (1 << 1));
+		}
+		frame[off] = AprsAX25.AX25_UI_FRAME;
+		frame[off + 1] = (byte) AprsAX25.AX25_PID_NO_LAYER_3;
+		for (int i = 0; i < info.length(); i++)
+			frame[off + 2 + i] = (byte) info.charAt(i);
+		return new AprsFrame(frame, frame.length, num_addr);
+	}
+
+	/*
+	 * Feed AprsDedupe stations beaconing every 60 seconds, each
+	 * beacon heard directly and through one and two digipeaters,
+	 * and report the cost of each check, what it allocates and how
+	 * many packets pass. The second pass caps the table below the
+	 * number of stations to show early eviction. Exits with an
+	 * error unless exactly one copy of each beacon passes, a
+	 * different information field from the same station passes and
+	 * one differing only in trailing white space doesn't
+	 */
+	void dedupe() {
+		boolean	ok = true;
+
+		AprsFrame[]	frames = new AprsFrame[dedupe_stations * dedupe_copies];
+
+		for (int s = 0; s < dedupe_stations; s++)
+			for (int c = 0; c < dedupe_copies; c++)
+				frames[s * dedupe_copies + c] = dedupe_frame(String.format("!4903.50N/07201.75W-Station %d", s), c);
+
+		/* Spread a round of beacons over 60 seconds */
+		long	step = 60000000000L / frames.length;
+
+		System.out.printf("%-12s %10s %10s %10s %10s %10s\n", "max entries", "ns", "bytes", "passed", "dropped", "evicted");
+		for (int max_entries : new int[] { AprsDedupe.default_max_entries, dedupe_stations / 4 }) {
+			long	ns = Long.MAX_VALUE, bytes = 0;
+			AprsDedupe	dedupe = null;
+			long	now = 0;
+
+			for (int run = 0; run < runs; run++) {
+				now = 0;
+
+				dedupe = new AprsDedupe(null, AprsDedupe.default_window, max_entries);
+
+				long	bytes_0 = allocated();
+				long	start = System.nanoTime();
+
+				for (int r = 0; r < dedupe_rounds; r++) {
+					for (AprsFrame f : frames) {
+						dedupe.duplicate(f, now);
+						now += step;
+					}
+				}
+				ns = Math.min(ns, System.nanoTime() - start);
+				bytes = allocated() - bytes_0;
+			}
+
+			int	count = dedupe_rounds * frames.length;
+
+			System.out.printf("%-12d %10.1f %10.1f %10d %10d %10d\n", max_entries,
+					  (double) ns / count, (double) bytes / count,
+					  dedupe.passed, dedupe.dropped, dedupe.evicted);
+
+			if (dedupe.passed != dedupe_rounds * dedupe_stations ||
+			    dedupe.dropped != dedupe_rounds * dedupe_stations * (dedupe_copies - 1))
+				ok = false;
+
+			String	info = String.format("!4903.50N/07201.75W-Station %d", 0);
+
+			if (dedupe.duplicate(dedupe_frame(info, 0), now) ||
+			    dedupe.duplicate(dedupe_frame(info + "!", 1), now) ||
+			    !dedupe.duplicate(dedupe_frame(info + " \r\n", 2), now))
+				ok = false;
+		}
+		if (!ok) {
+			System.out.printf("dedupe mismatch\n");
+			System.exit(1);
+		}
+	}
+
+	static void usage() {
+		System.err.printf("usage: AprsBench {detectors|decimate|fused|prefilter|bank|channels|fixed|deframer|reject} [file ...]\n");
+		System.err.printf("       AprsBench {dot|fft|fold|cache|fcs|recover|lazy|parse|address|dedupe}\n");
+		System.exit(1);
+	}
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 1)
+			usage();
+
+		AprsBench	b = new AprsBench();
+		String[]	files = Arrays.copyOfRange(args, 1, args.length);
+
+		if (files.length == 0)
+			files = default_files;
+
+		if (args[0].equals("detectors"))
+			b.detectors(files);
+		else if (args[0].equals("decimate"))
+			b.decimate(files);
+		else if (args[0].equals("fused"))
+			b.fused(files);
+		else if (args[0].equals("prefilter"))
+			b.prefilter(files);
+		else if (args[0].equals("bank"))
+			b.bank(files);
+		else if (args[0].equals("channels"))
+			b.channels(files);
+		else if (args[0].equals("fixed"))
+			b.fixed(files);
+		else if (args[0].equals("deframer"))
+			b.deframer(files);
+		else if (args[0].equals("reject"))
+			b.reject(files);
+		else if (args[0].equals("dot"))
+			b.dot();
+		else if (args[0].equals("fft"))
+			b.fft();
+		else if (args[0].equals("fold"))
+			b.fold();
+		else if (args[0].equals("cache"))
+			b.cache();
+		else if (args[0].equals("fcs"))
+			b.fcs();
+		else if (args[0].equals("recover"))
+			b.recover();
+		else if (args[0].equals("lazy"))
+			b.lazy();
+		else if (args[0].equals("parse"))
+			b.parse();
+		else if (args[0].equals("address"))
+			b.address();
+		else if (args[0].equals("dedupe"))
+			b.dedupe();
+		else
+			usage();
+	}
+}
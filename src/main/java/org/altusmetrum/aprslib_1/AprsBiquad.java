@@ -0,0 +1,287 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import java.util.*;
+
+/*
+ * IIR filter built as a cascade of second order sections. Each
+ * section is
+ *
+ *	       b0 + b1 z^-1 + b2 z^-2
+ *	H(z) = ----------------------
+ *	        1 + a1 z^-1 + a2 z^-2
+ *
+ * run in transposed direct form II. Keeping each section to two
+ * poles keeps the coefficients small and the filter stable in
+ * float, unlike a single high order polynomial.
+ *
+ * Filters can be designed from Butterworth prototypes through the
+ * bilinear transform at any sample rate, or assembled directly from
+ * z-plane pole and zero pairs.
+ */
+public class AprsBiquad {
+
+	float[]	b0, b1, b2;
+	float[]	a1, a2;
+
+	/* Section state */
+	float[]	z1, z2;
+
+	int	sections;
+
+	public float filter(float x) {
+		for (int s = 0; s < sections; s++) {
+			float y = b0[s] * x + z1[s];
+			z1[s] = b1[s] * x - a1[s] * y + z2[s];
+			z2[s] = b2[s] * x - a2[s] * y;
+			x = y;
+		}
+		return x;
+	}
+
+	/* Filter a block of samples in place, one section at a time */
+	public void filter(float[] buf, int off, int len) {
+		for (int s = 0; s < sections; s++) {
+			float sb0 = b0[s], sb1 = b1[s], sb2 = b2[s];
+			float sa1 = a1[s], sa2 = a2[s];
+			float sz1 = z1[s], sz2 = z2[s];
+
+			for (int i = off; i < off + len; i++) {
+				float x = buf[i];
+				float y = sb0 * x + sz1;
+				sz1 = sb1 * x - sa1 * y + sz2;
+				sz2 = sb2 * x - sa2 * y;
+				buf[i] = y;
+			}
+			z1[s] = sz1;
+			z2[s] = sz2;
+		}
+	}
+
+	public int sections() {
+		return sections;
+	}
+
+	/* Magnitude of the response at 'freq' cycles per sample */
+	public double gain(double freq) {
+		double	g = 1.0;
+
+		for (int s = 0; s < sections; s++)
+			g *= section_gain(b0[s], b1[s], b2[s], a1[s], a2[s], freq);
+		return g;
+	}
+
+	static double section_gain(double b0, double b1, double b2, double a1, double a2, double freq) {
+		double	w = 2 * Math.PI * freq;
+		double	c1 = Math.cos(w), s1 = Math.sin(w);
+		double	c2 = Math.cos(2 * w), s2 = Math.sin(2 * w);
+
+		/* evaluate at z^-1 = e^-jw */
+		double	nr = b0 + b1 * c1 + b2 * c2;
+		double	ni = -(b1 * s1 + b2 * s2);
+		double	dr = 1 + a1 * c1 + a2 * c2;
+		double	di = -(a1 * s1 + a2 * s2);
+
+		return Math.sqrt((nr * nr + ni * ni) / (dr * dr + di * di));
+	}
+
+	/*
+	 * Section with zeros at zr ± j zi and poles at pr ± j pi, the
+	 * numerator scaled to unity gain at 'freq' cycles per sample.
+	 * A real zero or pole pair is given as two values in the re/im
+	 * slots with 'real' set.
+	 */
+	static double[] section(double zr, double zi, boolean zeros_real,
+				double pr, double pi, boolean poles_real,
+				double freq) {
+		double	b0 = 1, b1, b2, a1, a2;
+
+		if (zeros_real) {
+			b1 = -(zr + zi);
+			b2 = zr * zi;
+		} else {
+			b1 = -2 * zr;
+			b2 = zr * zr + zi * zi;
+		}
+		if (poles_real) {
+			a1 = -(pr + pi);
+			a2 = pr * pi;
+		} else {
+			a1 = -2 * pr;
+			a2 = pr * pr + pi * pi;
+		}
+
+		double	g = section_gain(b0, b1, b2, a1, a2, freq);
+		return new double[] { b0 / g, b1 / g, b2 / g, a1, a2 };
+	}
+
+	/* Bilinear transform of the s-plane point (re, im) at 'fs' */
+	static double[] bilinear(double re, double im, double fs) {
+		double	nr = 2 * fs + re, ni = im;
+		double	dr = 2 * fs - re, di = -im;
+		double	d = dr * dr + di * di;
+
+		return new double[] { (nr * dr + ni * di) / d, (ni * dr - nr * di) / d };
+	}
+
+	/* Frequency warping for the bilinear transform, in radians/second */
+	static double prewarp(double freq, double fs) {
+		return 2 * fs * Math.tan(Math.PI * freq / fs);
+	}
+
+	/* Poles of the order 'n' Butterworth lowpass prototype, cutoff 1 rad/s */
+	static double[][] butterworth(int n) {
+		double[][]	p = new double[n][];
+
+		for (int k = 0; k < n; k++) {
+			double theta = Math.PI * (2 * k + n + 1) / (2 * n);
+			p[k] = new double[] { Math.cos(theta), Math.sin(theta) };
+		}
+		return p;
+	}
+
+	/*
+	 * Pair up a set of z-plane poles into sections. Complex poles
+	 * go with their conjugates, real ones two at a time. The
+	 * sections are sorted so the poles nearest the unit circle come
+	 * last, which keeps the intermediate gain down.
+	 */
+	static List<double[]> pole_pairs(List<double[]> poles) {
+		List<double[]>	pairs = new ArrayList<double[]>();
+		List<Double>	real = new ArrayList<Double>();
+
+		for (double[] p : poles) {
+			if (Math.abs(p[1]) < 1e-12)
+				real.add(p[0]);
+			else if (p[1] > 0)
+				pairs.add(new double[] { p[0], p[1], 0 });
+		}
+		for (int i = 0; i < real.size(); i += 2) {
+			double	other = i + 1 < real.size() ? real.get(i + 1) : 0.0;
+			pairs.add(new double[] { real.get(i), other, 1 });
+		}
+		Collections.sort(pairs, new Comparator<double[]>() {
+				public int compare(double[] a, double[] b) {
+					return Double.compare(radius(a), radius(b));
+				}
+			});
+		return pairs;
+	}
+
+	static double radius(double[] pair) {
+		if (pair[2] != 0)
+			return Math.max(Math.abs(pair[0]), Math.abs(pair[1]));
+		return Math.hypot(pair[0], pair[1]);
+	}
+
+	/*
+	 * Butterworth bandpass from 'low' to 'high' Hz. 'order' is the
+	 * order of the lowpass prototype; the result has 2 * order
+	 * poles in 'order' sections.
+	 */
+	static public AprsBiquad bandpass(int order, float sample_rate, float low, float high) {
+		double	fs = sample_rate;
+		double	w1 = prewarp(low, fs);
+		double	w2 = prewarp(high, fs);
+		double	w0_2 = w1 * w2;
+		double	bw = w2 - w1;
+
+		List<double[]>	poles = new ArrayList<double[]>();
+
+		for (double[] p : butterworth(order)) {
+			/* s = p bw/2 ± sqrt((p bw/2)^2 - w0^2) */
+			double	hr = p[0] * bw / 2, hi = p[1] * bw / 2;
+			double	dr = hr * hr - hi * hi - w0_2;
+			double	di = 2 * hr * hi;
+			double	m = Math.hypot(dr, di);
+			double	sr = Math.sqrt((m + dr) / 2);
+			double	si = Math.copySign(Math.sqrt((m - dr) / 2), di);
+
+			poles.add(bilinear(hr + sr, hi + si, fs));
+			poles.add(bilinear(hr - sr, hi - si, fs));
+		}
+
+		/* Center of the passband after warping back */
+		double	center = Math.atan(Math.sqrt(w0_2) / (2 * fs)) / Math.PI;
+
+		AprsBiquad	f = new AprsBiquad(order);
+
+		for (double[] pp : pole_pairs(poles)) {
+			/* zeros at z = 1 and z = -1 */
+			f.add(section(1, -1, true, pp[0], pp[1], pp[2] != 0, center));
+		}
+		return f;
+	}
+
+	/* Butterworth lowpass with 'order' poles, rounded up to even */
+	static public AprsBiquad lowpass(int order, float sample_rate, float cutoff) {
+		double	fs = sample_rate;
+		double	wc = prewarp(cutoff, fs);
+		int	n = (order + 1) & ~1;
+
+		List<double[]>	poles = new ArrayList<double[]>();
+
+		for (double[] p : butterworth(n))
+			poles.add(bilinear(p[0] * wc, p[1] * wc, fs));
+
+		AprsBiquad	f = new AprsBiquad(n / 2);
+
+		for (double[] pp : pole_pairs(poles)) {
+			/* both zeros at z = -1 */
+			f.add(section(-1, -1, true, pp[0], pp[1], pp[2] != 0, 0.0));
+		}
+		return f;
+	}
+
+	/*
+	 * Build a filter from conjugate pairs of z-plane zeros and
+	 * poles, zeros[i] = { re, im } with poles[i] likewise, each
+	 * section normalized to unity gain at 'freq' Hz.
+	 */
+	static public AprsBiquad from_pairs(double[][] zeros, double[][] poles, float sample_rate, float freq) {
+		if (zeros.length != poles.length)
+			throw new IllegalArgumentException("need one zero pair per pole pair");
+
+		AprsBiquad	f = new AprsBiquad(poles.length);
+
+		for (int i = 0; i < poles.length; i++)
+			f.add(section(zeros[i][0], zeros[i][1], false,
+				      poles[i][0], poles[i][1], false,
+				      freq / sample_rate));
+		return f;
+	}
+
+	private void add(double[] c) {
+		b0[sections] = (float) c[0];
+		b1[sections] = (float) c[1];
+		b2[sections] = (float) c[2];
+		a1[sections] = (float) c[3];
+		a2[sections] = (float) c[4];
+		sections++;
+	}
+
+	private AprsBiquad(int max_sections) {
+		b0 = new float[max_sections];
+		b1 = new float[max_sections];
+		b2 = new float[max_sections];
+		a1 = new float[max_sections];
+		a2 = new float[max_sections];
+		z1 = new float[max_sections];
+		z2 = new float[max_sections];
+		sections = 0;
+	}
+}
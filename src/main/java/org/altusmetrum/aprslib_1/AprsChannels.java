@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * Decode several audio channels at once, one AprsDemod per
+ * channel, scheduled over a fixed work-stealing pool. Packets are
+ * delivered on the calling thread, in channel order for each
+ * block, with AprsAprs.channel set. Carrier detect changes are
+ * delivered the same way, in order with the packets around them;
+ * channel() says which channel they came from, or each channel
+ * can be given an AprsPacket of its own.
+ *
+ * Input is either interleaved frames, as read from a multichannel
+ * sound card, or one array per channel.
+ */
+public class AprsChannels {
+
+	/* A decoded packet, or a carrier detect change if packet is null */
+	static class event {
+		AprsAprs	packet;
+		boolean		carrier;
+
+		event(AprsAprs packet, boolean carrier) {
+			this.packet = packet;
+			this.carrier = carrier;
+		}
+	}
+
+	class channel implements AprsPacket, Callable<Void> {
+		int		id;
+		AprsPacket	packet;
+		AprsDemod	demod;
+		List<event>	received = new ArrayList<event>();
+
+		/* Work for the next call */
+		float[]		buf;
+		int		off;
+		int		len;
+
+		/* Processing time and samples, for headroom() */
+		long		nanos;
+		long		samples;
+
+		public void receive(AprsAprs packet) {
+			packet.channel = id;
+			/* Delivered after the frame buffer is reused */
+			packet.keep();
+			received.add(new event(packet, false));
+		}
+
+		public void carrier_detect(boolean detect) {
+			received.add(new event(null, detect));
+		}
+
+		public Void call() {
+			long	start = System.nanoTime();
+
+			demod.demod(buf, off, len);
+			nanos += System.nanoTime() - start;
+			samples += len;
+			return null;
+		}
+
+		channel(int id, AprsPacket packet, float sample_rate, int options) {
+			this.id = id;
+			this.packet = packet;
+			demod = new AprsDemod(this, sample_rate, options);
+		}
+	}
+
+	float		sample_rate;
+	channel[]	channels;
+	List<channel>	tasks;
+	ForkJoinPool	pool;
+
+	/* De-interleaved input, one block per channel */
+	float[][]	block;
+
+	/* Channel being delivered, -1 outside of deliver() */
+	int		delivering = -1;
+
+	private void run() {
+		if (pool == null) {
+			for (channel c : channels)
+				c.call();
+		} else {
+			try {
+				for (Future<Void> f : pool.invokeAll(tasks))
+					f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		deliver();
+	}
+
+	/* Pass along what each channel decoded, in channel order */
+	private void deliver() {
+		for (channel c : channels) {
+			delivering = c.id;
+			for (event e : c.received) {
+				if (e.packet != null)
+					c.packet.receive(e.packet);
+				else
+					c.packet.carrier_detect(e.carrier);
+			}
+			c.received.clear();
+		}
+		delivering = -1;
+	}
+
+	/* Demodulate 'frames' frames of interleaved samples, one
+	 * sample per channel in each frame
+	 */
+	public void demod_interleaved(float[] buf, int off, int frames) {
+		int	n_channel = channels.length;
+
+		while (frames > 0) {
+			int n = Math.min(frames, AprsDemod.block_size);
+
+			for (int i = 0; i < n; i++)
+				for (int c = 0; c < n_channel; c++)
+					block[c][i] = buf[off + i * n_channel + c];
+
+			for (channel c : channels) {
+				c.buf = block[c.id];
+				c.off = 0;
+				c.len = n;
+			}
+			run();
+			off += n * n_channel;
+			frames -= n;
+		}
+	}
+
+	/* Demodulate 'len' samples from each of the per-channel arrays */
+	public void demod(float[][] bufs, int off, int len) {
+		if (bufs.length != channels.length)
+			throw new IllegalArgumentException(String.format("Need %d channels, not %d",
+									 channels.length, bufs.length));
+		while (len > 0) {
+			int n = Math.min(len, AprsDemod.block_size);
+
+			for (channel c : channels) {
+				c.buf = bufs[c.id];
+				c.off = off;
+				c.len = n;
+			}
+			run();
+			off += n;
+			len -= n;
+		}
+	}
+
+	public void flush() {
+		for (channel c : channels)
+			c.demod.flush();
+		deliver();
+	}
+
+	/*
+	 * How many times faster than real time the channel has been
+	 * decoded, counting only the time spent in its demodulator.
+	 * Values near or below 1 mean the channel can't keep up
+	 */
+	public double headroom(int c) {
+		channel	ch = channels[c];
+
+		if (ch.nanos == 0)
+			return Double.POSITIVE_INFINITY;
+		return (ch.samples / sample_rate) / (ch.nanos / 1e9);
+	}
+
+	public int channels() {
+		return channels.length;
+	}
+
+	/* The channel a packet or carrier detect change being
+	 * delivered came from, for an AprsPacket shared between
+	 * channels. -1 when called from anywhere else
+	 */
+	public int channel() {
+		return delivering;
+	}
+
+	/* Stop the worker threads. No more decoding after this */
+	public void close() {
+		if (pool != null)
+			pool.shutdown();
+	}
+
+	static AprsPacket[] shared(AprsPacket packet, int n_channel) {
+		if (n_channel < 1)
+			throw new IllegalArgumentException(String.format("Invalid channel count %d", n_channel));
+
+		AprsPacket[]	packets = new AprsPacket[n_channel];
+
+		Arrays.fill(packets, packet);
+		return packets;
+	}
+
+	/* Decode one channel for each of 'packets' */
+	public AprsChannels(AprsPacket[] packets, float sample_rate, int options, int threads) {
+		int	n_channel = packets.length;
+
+		if (n_channel < 1)
+			throw new IllegalArgumentException(String.format("Invalid channel count %d", n_channel));
+
+		this.sample_rate = sample_rate;
+
+		channels = new channel[n_channel];
+		block = new float[n_channel][AprsDemod.block_size];
+		for (int c = 0; c < n_channel; c++)
+			channels[c] = new channel(c, packets[c], sample_rate, options);
+		tasks = Arrays.asList(channels);
+
+		threads = Math.min(threads, n_channel);
+		if (threads > 1)
+			pool = new ForkJoinPool(threads);
+	}
+
+	/* Decode 'n_channel' channels, all delivering to 'packet' */
+	public AprsChannels(AprsPacket packet, float sample_rate, int n_channel, int options, int threads) {
+		this(shared(packet, n_channel), sample_rate, options, threads);
+	}
+
+	public AprsChannels(AprsPacket packet, float sample_rate, int n_channel) {
+		this(packet, sample_rate, n_channel, AprsDemod.default_options,
+		     Runtime.getRuntime().availableProcessors());
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import java.util.concurrent.*;
+
+/*
+ * Process-wide cache of designed filter coefficients. Decoders
+ * built with the same parameters share one copy of each table,
+ * which must be treated as read-only once it has been stored here.
+ */
+public class AprsCoeffCache {
+
+	static final int	kind_filter = 1;
+	static final int	kind_goertzel = 2;
+
+	static final class Key {
+		final int	kind;
+		final int	type;
+		final int	window;
+		final int	size;
+		final float	rate;
+		final float	a;
+		final float	b;
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+
+			Key	k = (Key) o;
+
+			return (kind == k.kind && type == k.type &&
+				window == k.window && size == k.size &&
+				Float.floatToIntBits(rate) == Float.floatToIntBits(k.rate) &&
+				Float.floatToIntBits(a) == Float.floatToIntBits(k.a) &&
+				Float.floatToIntBits(b) == Float.floatToIntBits(k.b));
+		}
+
+		public int hashCode() {
+			int	h = kind;
+
+			h = h * 31 + type;
+			h = h * 31 + window;
+			h = h * 31 + size;
+			h = h * 31 + Float.floatToIntBits(rate);
+			h = h * 31 + Float.floatToIntBits(a);
+			h = h * 31 + Float.floatToIntBits(b);
+			return h;
+		}
+
+		Key(int kind, int type, int window, int size, float rate, float a, float b) {
+			this.kind = kind;
+			this.type = type;
+			this.window = window;
+			this.size = size;
+			this.rate = rate;
+			this.a = a;
+			this.b = b;
+		}
+	}
+
+	static private final ConcurrentHashMap<Key,Object>	cache = new ConcurrentHashMap<Key,Object>();
+
+	static boolean	enabled = true;
+
+	static Object get(Key key) {
+		if (!enabled)
+			return null;
+		return cache.get(key);
+	}
+
+	/* Store a freshly designed value. If another thread got there
+	 * first, return its value instead so everyone shares one copy
+	 */
+	static Object put(Key key, Object value) {
+		if (!enabled)
+			return value;
+
+		Object	prev = cache.putIfAbsent(key, value);
+
+		return prev != null ? prev : value;
+	}
+
+	static public int size() {
+		return cache.size();
+	}
+
+	static public void clear() {
+		cache.clear();
+	}
+}
@@ -25,7 +25,10 @@ public interface AprsData {
 
 	public void carrier_detect(boolean detect);
 
-	public void data(byte b);
+	/* Returns false when the frame can't be valid, in which case
+	 * no more bytes are sent until the next flag
+	 */
+	public boolean data(byte b);
 
 	public void start();
 
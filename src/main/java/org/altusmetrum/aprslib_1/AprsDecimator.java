@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Decimating FIR filter. Samples are pushed in at the input rate
+ * and the filter output is only computed for the samples which are
+ * kept, one in every 'factor'. This is the same amount of work as a
+ * polyphase filter bank, where each phase of the input only meets
+ * the taps which line up with it, without keeping a separate ring
+ * for every phase.
+ *
+ * The filter must remove everything above half of the output rate
+ * or it will alias back into the passband.
+ */
+public class AprsDecimator {
+
+	AprsFilter	filter;
+	AprsRing	ring;
+	int		factor;
+	int		phase;
+
+	/* Push one input sample, returns true when an output is ready */
+	public boolean put(float in) {
+		ring.put(in);
+		if (++phase < factor)
+			return false;
+		phase = 0;
+		return true;
+	}
+
+	/* Filter output for the most recent input sample */
+	public float get() {
+		return filter.convolve(ring);
+	}
+
+	/*
+	 * Decimate a block of samples, returning the number of output
+	 * samples. 'in' and 'out' may be the same array as long as
+	 * out_off <= in_off.
+	 */
+	public int decimate(float[] in, int in_off, int len, float[] out, int out_off) {
+		int	n = 0;
+
+		for (int i = 0; i < len; i++) {
+			ring.put(in[in_off + i]);
+			if (++phase == factor) {
+				phase = 0;
+				out[out_off + n++] = filter.convolve(ring);
+			}
+		}
+		return n;
+	}
+
+	public int factor() {
+		return factor;
+	}
+
+	public int length() {
+		return filter.length();
+	}
+
+	public AprsDecimator(AprsFilter filter, int factor) {
+		this.filter = filter;
+		this.factor = factor;
+		ring = new AprsRing(filter.length());
+		phase = 0;
+	}
+}
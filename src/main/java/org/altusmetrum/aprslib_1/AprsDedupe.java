@@ -0,0 +1,228 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+/*
+ * This code uses ideas and algorithms from Dire Wolf, an amateur
+ * radio packet TNC which was written by John Langner, WB2OSZ. That
+ * project is also licensed under the GPL, either version 3 of the
+ * License or (at your option) any later version.
+ */
+
+package org.altusmetrum.aprslib_1;
+
+import java.util.Arrays;
+
+/*
+ * Drops copies of a packet heard again within 'window' seconds,
+ * passing the rest on to 'packet'. Digipeated traffic arrives
+ * several times in quick succession, each copy with a different
+ * path, so packets match on the source, destination and information
+ * field alone. Trailing spaces, CRs and LFs in the information field
+ * are ignored, as some digipeaters add or remove them.
+ *
+ * Each packet is remembered as a 64-bit hash and the time it was
+ * first heard, in open-addressed primitive arrays; hearing a copy
+ * doesn't restart the window, so a station beaconing the same text
+ * more often than that is still passed once per window. Checks
+ * don't allocate. Expired entries are reused as they are found;
+ * when 'max_entries' are held, the table is swept, and if that
+ * isn't enough the oldest entries are forgotten early.
+ */
+public class AprsDedupe implements AprsPacket {
+
+	static public final float	default_window = 30.0f;
+	static public final int		default_max_entries = 4096;
+
+	AprsPacket	packet;
+	long		window;		/* ns */
+	int		max_entries;
+
+	/* hashes[i] == 0 marks an empty slot */
+	long[]		hashes;
+	long[]		times;
+	int		mask;
+	int		count;		/* Occupied slots, including expired ones */
+
+	/* Spare arrays for sweep */
+	long[]		new_hashes;
+	long[]		new_times;
+
+	public long	passed, dropped, evicted;
+
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/* Hash of the source, destination and trimmed information field */
+	public static long hash(AprsFrame frame) {
+		long	h = mix(frame.address_key(AprsAX25.AX25_DESTINATION) * 31 +
+				frame.address_key(AprsAX25.AX25_SOURCE));
+		byte[]	data = frame.data();
+		int	start = frame.info_offset();
+		int	end = start + frame.info_length();
+
+		while (end > start) {
+			byte	c = data[end - 1];
+
+			if (c != ' ' && c != '\r' && c != '\n')
+				break;
+			end--;
+		}
+		for (int i = start; i < end; i++)
+			h = (h ^ (data[i] & 0xff)) * 0x100000001b3L;
+		h = mix(h);
+		return h == 0 ? 1 : h;
+	}
+
+	private void insert(long[] hashes, long[] times, long hash, long time) {
+		int	i = (int) hash & mask;
+
+		while (hashes[i] != 0)
+			i = (i + 1) & mask;
+		hashes[i] = hash;
+		times[i] = time;
+	}
+
+	/*
+	 * Rebuild the table with only the entries heard after
+	 * 'cutoff', so that expired entries no longer lengthen the
+	 * probe sequences
+	 */
+	private void sweep(long cutoff) {
+		Arrays.fill(new_hashes, 0);
+		count = 0;
+		for (int i = 0; i <= mask; i++) {
+			if (hashes[i] == 0)
+				continue;
+			if (times[i] - cutoff > 0) {
+				insert(new_hashes, new_times, hashes[i], times[i]);
+				count++;
+			}
+		}
+
+		long[]	t = hashes;
+
+		hashes = new_hashes;
+		new_hashes = t;
+		t = times;
+		times = new_times;
+		new_times = t;
+	}
+
+	/*
+	 * Make room for another entry at time 'now', forgetting entries
+	 * early if a quarter of the table isn't free once the expired
+	 * ones are gone, so that sweeps stay rare
+	 */
+	private void make_room(long now) {
+		int	before = count;
+		long	age = window;
+
+		sweep(now - age);
+		while (count > max_entries * 3 / 4 && age > 0) {
+			age /= 2;
+			sweep(now - age);
+		}
+		evicted += before - count;
+	}
+
+	/*
+	 * Whether 'frame' matches one first heard less than 'window'
+	 * before 'now', in ns. If not, it is remembered as heard at
+	 * 'now'
+	 */
+	public synchronized boolean duplicate(AprsFrame frame, long now) {
+		long	hash = hash(frame);
+		int	i = (int) hash & mask;
+		int	free = -1;
+
+		for (;;) {
+			long	h = hashes[i];
+
+			if (h == 0)
+				break;
+			if (now - times[i] < window) {
+				if (h == hash) {
+					dropped++;
+					return true;
+				}
+			} else if (free < 0)
+				free = i;
+			i = (i + 1) & mask;
+		}
+		passed++;
+		if (free >= 0) {
+			hashes[free] = hash;
+			times[free] = now;
+			return false;
+		}
+		if (count >= max_entries) {
+			make_room(now);
+			insert(hashes, times, hash, now);
+		} else {
+			hashes[i] = hash;
+			times[i] = now;
+		}
+		count++;
+		return false;
+	}
+
+	public void receive(AprsAprs packet) {
+		if (!duplicate(packet.frame(), System.nanoTime()))
+			this.packet.receive(packet);
+	}
+
+	public void carrier_detect(boolean detect) {
+		packet.carrier_detect(detect);
+	}
+
+	public synchronized int size() {
+		return count;
+	}
+
+	public synchronized void clear() {
+		Arrays.fill(hashes, 0);
+		count = 0;
+	}
+
+	public AprsDedupe(AprsPacket packet, float window, int max_entries) {
+		int	size = 16;
+
+		while (size < max_entries * 2)
+			size <<= 1;
+
+		this.packet = packet;
+		this.window = (long) (window * 1e9);
+		this.max_entries = max_entries;
+		hashes = new long[size];
+		times = new long[size];
+		new_hashes = new long[size];
+		new_times = new long[size];
+		mask = size - 1;
+	}
+
+	public AprsDedupe(AprsPacket packet, float window) {
+		this(packet, window, default_max_entries);
+	}
+
+	public AprsDedupe(AprsPacket packet) {
+		this(packet, default_window);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * HDLC deframer which takes eight raw bits at a time from the
+ * PLL. The bits go through a NRZI table, then an event table says
+ * whether any of them completes a flag, abort, idle or stuffed bit
+ * pattern. When none does, which is most of the time inside a
+ * frame, the bits are added to the octet in one step. Otherwise
+ * they run through AprsHdlc's per-bit state machine. Single bits
+ * from receive() go straight there.
+ *
+ * Raw bits are packed oldest first, starting at bit 0.
+ */
+public class AprsDeframer extends AprsHdlc {
+
+	/*
+	 * NRZI decode of eight raw bits, indexed by the previous raw
+	 * bit in bit 8 and the new raw bits below that. The decoded
+	 * bits are in the low byte and the last raw bit in bit 8.
+	 */
+	static final short[]	nrzi = new short[512];
+
+	/*
+	 * Whether the eight decoded bits in the low byte cause an
+	 * event, given the frame pattern before them in the high byte
+	 */
+	static final boolean[]	event = new boolean[65536];
+
+	static boolean is_event(int frame_pattern) {
+		return (frame_pattern == 0x7e ||
+			frame_pattern == 0xfe ||
+			frame_pattern == 0xff ||
+			(frame_pattern & 0xfc) == 0x7c);
+	}
+
+	static {
+		for (int i = 0; i < 512; i++) {
+			int	prev = i >> 8;
+			int	bits = 0;
+
+			for (int b = 0; b < 8; b++) {
+				int	raw = (i >> b) & 1;
+
+				if (raw == prev)
+					bits |= 1 << b;
+				prev = raw;
+			}
+			nrzi[i] = (short) (bits | (prev << 8));
+		}
+
+		for (int i = 0; i < 65536; i++) {
+			int	pattern = i >> 8;
+
+			for (int b = 0; b < 8 && !event[i]; b++) {
+				pattern = (pattern >> 1) | (((i >> b) & 1) << 7);
+				event[i] = is_event(pattern);
+			}
+		}
+	}
+
+	/* Receive eight raw bits, oldest in bit 0 */
+	public void receive_octet(int raw) {
+		int	decoded = nrzi[(prev_raw << 8) | raw];
+		int	bits = decoded & 0xff;
+
+		prev_raw = decoded >> 8;
+
+		/* Tracing goes bit by bit too */
+		if (event[(frame_pattern << 8) | bits] || trace != null) {
+			for (int b = 0; b < 8; b++)
+				step((bits >> b) & 1);
+			return;
+		}
+
+		/* No pattern matched, so the last eight bits are the
+		 * whole frame pattern and none of them are dropped
+		 */
+		frame_pattern = bits;
+		carrier_pattern = (carrier_pattern >> 8) | (bits << 16);
+
+		if (octet_len >= 0) {
+			int	m = octet_len;
+			int	w = (octet >> (8 - m)) | (bits << m);
+
+			if (!data.data((byte) w))
+				skip();
+			octet = ((w >> 8) << (8 - m)) & 0xff;
+		} else if (skipping)
+			skipped_bits += 8;
+	}
+
+	public AprsDeframer(AprsData data) {
+		super(data);
+	}
+}
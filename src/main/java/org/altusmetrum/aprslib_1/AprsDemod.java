@@ -36,228 +36,184 @@ public class AprsDemod {
 
 	static final float	pre_filter_baud = 0.23f;
 
+	/* Lowest sample rate the decimator will reduce the input to */
+	static final float	decimated_rate = 9600.0f;
+
 	/*
 	 * Demodulation options. All of these improve the demodulation
-	 * accuracy while increasing the cost of the computation.
+	 * accuracy while increasing the cost of the computation,
+	 * except for the sliding detector which trades a bit of
+	 * accuracy for a lot less computation.
 	 */
 
 	boolean preiir;			/* Enable iir prefilter */
 	boolean prefilter;		/* Enable bandpass prefilter */
 	boolean	convolution;		/* Select convolution detector instead of Goertzel */
 	boolean lowfilter;		/* Enable lowpass postfilter */
+	boolean sliding;		/* Select sliding Goertzel detector instead of Goertzel */
+	boolean decimate;		/* Run the detectors at a reduced sample rate */
+	boolean fused;			/* Merge the prefilter into the convolution detectors;
+					 * the 266-tap kernels only keep up with the
+					 * unfused detectors via FFT over whole blocks,
+					 * per-sample demod() is about three times slower */
+	boolean hold;			/* Hold the previous bit inside the hysteresis band */
+	boolean packed;			/* Deframe eight bits at a time */
+	boolean recover;		/* Repair frames with one or two bad bits. Worse
+					 * damage can be mis-repaired into a wrong packet
+					 * with a good FCS; callers which can't take that
+					 * must drop packets with AprsAprs.fixed_bits set */
+	boolean lazy;			/* Decode packet fields when they're read */
 
 	static final boolean default_preiir = false;
 	static final boolean default_prefilter = true;
 	static final boolean default_convolution = false;
 	static final boolean default_lowfilter = true;
+	static final boolean default_sliding = false;
+	static final boolean default_decimate = false;
+	static final boolean default_fused = false;
+	static final boolean default_hold = false;
+	static final boolean default_packed = false;
+	static final boolean default_recover = false;
+	static final boolean default_lazy = false;
+
+	static public final int option_preiir = 0x01;
+	static public final int option_prefilter = 0x02;
+	static public final int option_convolution = 0x04;
+	static public final int option_lowfilter = 0x08;
+	static public final int option_sliding = 0x10;
+	static public final int option_decimate = 0x20;
+	static public final int option_fused = 0x40;
+	static public final int option_hysteresis = 0x80;
+	static public final int option_packed = 0x100;
+	static public final int option_recover = 0x200;
+	static public final int option_lazy = 0x400;
+
+	static int options(boolean prefilter, boolean convolution, boolean lowfilter, boolean preiir, boolean sliding) {
+		int	options = 0;
+
+		if (preiir)
+			options |= option_preiir;
+		if (prefilter)
+			options |= option_prefilter;
+		if (convolution)
+			options |= option_convolution;
+		if (lowfilter)
+			options |= option_lowfilter;
+		if (sliding)
+			options |= option_sliding;
+		return options;
+	}
 
-	/* Bandpass prefilter. This can use more samples
-	 * than the detectors and hence filter out noise
-	 * better
+	static public final int default_options = (options(default_prefilter, default_convolution,
+							   default_lowfilter, default_preiir,
+							   default_sliding) |
+						   (default_decimate ? option_decimate : 0) |
+						   (default_fused ? option_fused : 0) |
+						   (default_hold ? option_hysteresis : 0) |
+						   (default_packed ? option_packed : 0) |
+						   (default_recover ? option_recover : 0) |
+						   (default_lazy ? option_lazy : 0));
+
+	/* Options for the front end feeding a back end built with
+	 * 'options'. A fused back end does the prefiltering itself
 	 */
-	AprsIir		pre_iir;
-	AprsFilter	pre_filter;
-	AprsRing	pre_ring;
-
-	/* Input samples to the detectors */
-	AprsRing	input_ring;
-
-	/* Goertzel detectors which operate as a single-bin FFT */
-	AprsGoertzel	mark_g;
-	AprsGoertzel	space_g;
-
-	/*
-	 * Convolution detectors, each of which is a pair of sin waves
-	 * 90° out of phase.
-	 */
-	AprsFilter	mark_cos_filter;
-	AprsFilter	mark_sin_filter;
-	AprsFilter	space_cos_filter;
-	AprsFilter	space_sin_filter;
-
-	/* Low pass postfilter to smooth out the detector results */
-	AprsFilter	low_filter;
-	AprsRing	mark_ring, space_ring;
+	static public int front_options(int options) {
+		boolean	fused = ((options & option_fused) != 0 &&
+				 (options & option_prefilter) != 0 &&
+				 (options & option_convolution) != 0 &&
+				 (options & option_decimate) == 0);
+
+		options &= option_preiir | option_prefilter | option_decimate;
+		if (fused)
+			options &= ~option_prefilter;
+		return options;
+	}
 
-	/* Automatic gain control, one for each band to compensate for
-	 * different audio paths
-	 */
-	AprsAgc		mark_agc;
-	AprsAgc		space_agc;
+	/* Decimation factor which takes sample_rate down to no less than decimated_rate */
+	static int decimation(float sample_rate) {
+		return Math.max(1, (int) Math.floor(sample_rate / decimated_rate));
+	}
 
-	/*
-	 * PLL used to track the clock by slowly skewing the baud rate
-	 * and phase by watching for zero crossings of the detector
+	/* Filter lengths below are chosen for the input rate; shrink
+	 * them to cover the same time at the decimated rate
 	 */
-	AprsPll		pll;
+	static int decimated_len(int len, int factor) {
+		return Math.max(1, round((float) len / factor));
+	}
 
 	/*
-	 * The output of the PLL feeds into the packet decoder
+	 * Input conditioning, shared by any number of back ends, and
+	 * the detector/slicer chain which decodes packets from it
 	 */
-	AprsHdlc	hdlc;
+	AprsFrontEnd	front;
+	AprsBackEnd	back;
 
 	/*
-	 * Apply a bit of hysteresis to the decoded bits to reduce
-	 * noise at zero crossings of the detector
+	 * Scratch buffers for the block demodulator are this size.
+	 * Each stage runs over a whole block before handing it to the
+	 * next
 	 */
-	int		demod_prev = 0;
+	static final int block_size = 4096;
 
-	private float z(float a, float b) {
-		return (float) Math.hypot(a,b);
+	public void demod(float input) {
+		if (front.put(input))
+			back.demod(front.get());
 	}
 
-//	int		count = 0;
-
-	public void demod(float input) {
+	/* Demodulate a block of samples. The result is equivalent to
+	 * calling demod(float) on each sample in turn, to within float
+	 * rounding: long filters run as FFT convolutions over a block
+	 */
+	public void demod(float[] buf, int off, int len) {
+		front.demod(buf, off, len);
+	}
 
-		/* Prefilter with a bandpass to reduce noise outside of the
-		 * audio range
-		 */
-		if (prefilter) {
-			pre_ring.put(input);
-			input = pre_filter.convolve(pre_ring);
-		}
-		if (preiir) {
-			input = pre_iir.filter(input);
-		}
-
-		input_ring.put(input);
-
-		float mark, space;
-
-		if (convolution) {
-			mark  = z(mark_cos_filter.convolve(input_ring),
-				  mark_sin_filter.convolve(input_ring));
-			space = z(space_cos_filter.convolve(input_ring),
-				  space_sin_filter.convolve(input_ring));
-		} else {
-			mark  = mark_g.filter(input_ring);
-			space = space_g.filter(input_ring);
-		}
-
-		if (lowfilter) {
-			mark_ring.put(mark);
-			space_ring.put(space);
-
-			mark  = low_filter.convolve(mark_ring);
-			space = low_filter.convolve(space_ring);
-		}
-
-		/* AGC mark and space separately */
-		mark  = mark_agc.sample(mark);
-		space = space_agc.sample(space);
-
-		/* see which is bigger */
-		float demod_out = mark - space;
-
-		int demod_val = demod_prev;
-
-		/* Avoid jitter around zero by adding a bit of hysteresis */
-		if (demod_out > hysteresis)
-			demod_val = 1;
-		else if (demod_out < -hysteresis)
-			demod_val = 0;
-
-//		System.out.printf ("%d %f %f %d\n", ++count, mark, space, demod_val);
-		/* Pass along to the PLL to detect bits */
-		pll.receive(demod_val, hdlc.in_frame());
+	public void trace(AprsTrace trace) {
+		back.trace(trace);
 	}
 
 	public float baud_rate() {
-		return pll.baud_rate();
+		return back.baud_rate();
 	}
 
 	public void flush() {
-		int	flush = 0;
-
-		if (prefilter)
-			flush += (pre_ring.data.length + 1) / 2;
-
-		flush += (input_ring.data.length + 1) / 2;
+		front.flush();
+	}
 
-		if (lowfilter)
-			flush += (mark_ring.data.length + 1) / 2;
+	public AprsDemod(AprsData data, float sample_rate, int options) {
+		this.preiir = (options & option_preiir) != 0;
+		this.prefilter = (options & option_prefilter) != 0;
+		this.convolution = (options & option_convolution) != 0;
+		this.lowfilter = (options & option_lowfilter) != 0;
+		this.sliding = (options & option_sliding) != 0;
+		this.decimate = (options & option_decimate) != 0;
+		this.hold = (options & option_hysteresis) != 0;
+		this.packed = (options & option_packed) != 0;
+		this.recover = (options & option_recover) != 0;
+		this.lazy = (options & option_lazy) != 0;
+
+		/* Fusing only works with the convolution detectors, and
+		 * the decimator already combines the prefilter with
+		 * another stage
+		 */
+		this.fused = ((options & option_fused) != 0 &&
+			      prefilter && convolution && !decimate);
 
-		for (int i = 0; i < flush; i++)
-			demod(0.0f);
+		front = new AprsFrontEnd(sample_rate, front_options(options));
+		back = new AprsBackEnd(data, front, options);
+		front.add(back);
 	}
 
 	public AprsDemod(AprsData data, float sample_rate, boolean prefilter, boolean convolution, boolean lowfilter, boolean preiir) {
-		this.preiir = preiir;
-		this.prefilter = prefilter;
-		this.convolution = convolution;
-		this.lowfilter = lowfilter;
-
-		int	sample_filter_len;
-
-		if (prefilter) {
-			float	half_band = baud_rate * pre_filter_baud;
-			int	pre_filter_len = 64 * 3;
-
-			pre_filter = new AprsFilter(AprsFilter.filter_bandpass,
-						    AprsFilter.window_kaiser,
-						    pre_filter_len,
-						    sample_rate,
-						    Math.min(mark_freq, space_freq) - half_band,
-						    Math.max(mark_freq, space_freq) + half_band);
-
-			pre_ring = new AprsRing(pre_filter.length());
-		}
-
-		if (convolution) {
-			sample_filter_len = 25 * 3;
-
-			mark_cos_filter = new AprsFilter(AprsFilter.filter_cos,
-							 AprsFilter.window_cosine,
-							 sample_filter_len,
-							 sample_rate,
-							 mark_freq);
-			mark_sin_filter = new AprsFilter(AprsFilter.filter_sin,
-							 AprsFilter.window_cosine,
-							 sample_filter_len,
-							 sample_rate,
-							 mark_freq);
-			space_cos_filter = new AprsFilter(AprsFilter.filter_cos,
-							  AprsFilter.window_cosine,
-							  sample_filter_len,
-							  sample_rate,
-							  space_freq);
-			space_sin_filter = new AprsFilter(AprsFilter.filter_sin,
-							  AprsFilter.window_cosine,
-							  sample_filter_len,
-							  sample_rate,
-							  space_freq);
-		} else {
-			sample_filter_len = 77;
-
-			mark_g = new AprsGoertzel(sample_rate, mark_freq, sample_filter_len);
-			space_g = new AprsGoertzel(sample_rate, space_freq, sample_filter_len);
-		}
-
-		input_ring = new AprsRing(sample_filter_len);
-
-		if (lowfilter) {
-			int	low_filter_len = 21 * 3;
-
-			low_filter = new AprsFilter(AprsFilter.filter_lowpass,
-						    AprsFilter.window_kaiser,
-						    low_filter_len,
-						    sample_rate,
-						    1.16f * baud_rate);
-
-			mark_ring = new AprsRing(low_filter_len);
-			space_ring = new AprsRing(low_filter_len);
-		}
-
-		mark_agc = new AprsAgc(agc_attack, agc_decay);
-		space_agc = new AprsAgc(agc_attack, agc_decay);
-
-		hdlc = new AprsHdlc(data);
-		pll = new AprsPll(hdlc, sample_rate, baud_rate);
+		this(data, sample_rate, options(prefilter, convolution, lowfilter, preiir, default_sliding));
 	}
 
 	public AprsDemod(AprsData data, float sample_rate) {
-		this(data, sample_rate, default_prefilter, default_convolution, default_lowfilter, default_preiir);
+		this(data, sample_rate, default_options);
+	}
+
+	public AprsDemod(AprsPacket packet, float sample_rate, int options) {
+		this(new AprsAX25(packet), sample_rate, options);
 	}
 
 	public AprsDemod(AprsPacket packet, float sample_rate, boolean prefilter, boolean convolution, boolean lowfilter, boolean preiir) {
@@ -0,0 +1,295 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Fixed point demodulator which takes 16-bit PCM directly. The
+ * stages match AprsDemod, with Q15 filter and detector tables,
+ * integer AGC and an integer PLL, and no float math per sample.
+ *
+ * Supports the prefilter, convolution, lowfilter, hysteresis and
+ * packed options.
+ */
+public class AprsDemodFixed {
+
+	static final int	supported = (AprsDemod.option_prefilter |
+					     AprsDemod.option_convolution |
+					     AprsDemod.option_lowfilter |
+					     AprsDemod.option_hysteresis |
+					     AprsDemod.option_packed |
+					     AprsDemod.option_recover |
+					     AprsDemod.option_lazy);
+
+	boolean prefilter;
+	boolean	convolution;
+	boolean lowfilter;
+	boolean hold;
+
+	AprsFilterFixed		pre_filter;
+	AprsRingFixed		pre_ring;
+
+	AprsRingFixed		input_ring;
+
+	AprsGoertzelFixed	mark_g;
+	AprsGoertzelFixed	space_g;
+
+	AprsFilterFixed		mark_cos_filter;
+	AprsFilterFixed		mark_sin_filter;
+	AprsFilterFixed		space_cos_filter;
+	AprsFilterFixed		space_sin_filter;
+
+	AprsFilterFixed		low_filter;
+	AprsRingFixed		mark_ring, space_ring;
+
+	AprsAgcFixed		mark_agc;
+	AprsAgcFixed		space_agc;
+
+	AprsPllFixed		pll;
+	AprsHdlc		hdlc;
+
+	static final int	hysteresis = AprsFilterFixed.q15(AprsDemod.hysteresis);
+
+	int			demod_prev = 0;
+
+	int[]			block_input = new int[AprsDemod.block_size];
+	int[]			block_mark = new int[AprsDemod.block_size];
+	int[]			block_space = new int[AprsDemod.block_size];
+
+	private int z(AprsFilterFixed cos, AprsFilterFixed sin) {
+		int	start = input_ring.start(cos.length());
+		long	re = AprsFilterFixed.dot(input_ring.data, start, cos.coeff) >> AprsFilterFixed.q;
+		long	im = AprsFilterFixed.dot(input_ring.data, start, sin.coeff) >> AprsFilterFixed.q;
+
+		return AprsFilterFixed.magnitude(re, im);
+	}
+
+	private void slice(int demod_out) {
+		int demod_val = demod_prev;
+
+		if (demod_out > hysteresis)
+			demod_val = 1;
+		else if (demod_out < -hysteresis)
+			demod_val = 0;
+
+		if (hold)
+			demod_prev = demod_val;
+
+		pll.receive(demod_val, hdlc.in_frame());
+	}
+
+	public void demod(int input) {
+		if (prefilter) {
+			pre_ring.put(input);
+			input = pre_filter.convolve(pre_ring);
+		}
+
+		input_ring.put(input);
+
+		int mark, space;
+
+		if (convolution) {
+			mark  = z(mark_cos_filter, mark_sin_filter);
+			space = z(space_cos_filter, space_sin_filter);
+		} else {
+			mark  = mark_g.filter(input_ring);
+			space = space_g.filter(input_ring);
+		}
+
+		if (lowfilter) {
+			mark_ring.put(mark);
+			space_ring.put(space);
+
+			mark  = low_filter.convolve(mark_ring);
+			space = low_filter.convolve(space_ring);
+		}
+
+		slice(mark_agc.sample(mark) - space_agc.sample(space));
+	}
+
+	/* Run the stages after the input has been loaded into block_input */
+	private void demod_block(int len) {
+		int[] input = block_input;
+		int[] mark = block_mark;
+		int[] space = block_space;
+
+		if (prefilter)
+			pre_filter.convolve(pre_ring, input, 0, len);
+
+		if (convolution) {
+			for (int i = 0; i < len; i++) {
+				input_ring.put(input[i]);
+				mark[i]  = z(mark_cos_filter, mark_sin_filter);
+				space[i] = z(space_cos_filter, space_sin_filter);
+			}
+		} else {
+			for (int i = 0; i < len; i++) {
+				input_ring.put(input[i]);
+				mark[i]  = mark_g.filter(input_ring);
+				space[i] = space_g.filter(input_ring);
+			}
+		}
+
+		if (lowfilter) {
+			low_filter.convolve(mark_ring, mark, 0, len);
+			low_filter.convolve(space_ring, space, 0, len);
+		}
+
+		mark_agc.sample(mark, 0, len);
+		space_agc.sample(space, 0, len);
+
+		for (int i = 0; i < len; i++)
+			slice(mark[i] - space[i]);
+	}
+
+	public void demod(short[] buf, int off, int len) {
+		while (len > 0) {
+			int n = Math.min(len, AprsDemod.block_size);
+
+			for (int i = 0; i < n; i++)
+				block_input[i] = buf[off + i];
+			demod_block(n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/* Demodulate little-endian 16-bit PCM, 'len' bytes of it */
+	public void demod(byte[] pcm, int off, int len) {
+		len >>= 1;
+		while (len > 0) {
+			int n = Math.min(len, AprsDemod.block_size);
+
+			for (int i = 0; i < n; i++, off += 2)
+				block_input[i] = (short) ((pcm[off] & 0xff) | (pcm[off + 1] << 8));
+			demod_block(n);
+			len -= n;
+		}
+	}
+
+	public void trace(AprsTrace trace) {
+		hdlc.trace = trace;
+		if (hdlc.data instanceof AprsAX25)
+			((AprsAX25) hdlc.data).trace = trace;
+	}
+
+	public float baud_rate() {
+		return pll.baud_rate();
+	}
+
+	public void flush() {
+		int	flush = (input_ring.length() + 1) / 2;
+
+		if (lowfilter)
+			flush += (mark_ring.length() + 1) / 2;
+		if (prefilter)
+			flush += (pre_ring.length() + 1) / 2;
+
+		demod(new short[flush], 0, flush);
+		pll.flush();
+	}
+
+	public AprsDemodFixed(AprsData data, float sample_rate, int options) {
+		if ((options & ~supported) != 0)
+			throw new IllegalArgumentException(String.format("Options 0x%x not supported in fixed point",
+									 options & ~supported));
+
+		this.prefilter = (options & AprsDemod.option_prefilter) != 0;
+		this.convolution = (options & AprsDemod.option_convolution) != 0;
+		this.lowfilter = (options & AprsDemod.option_lowfilter) != 0;
+		this.hold = (options & AprsDemod.option_hysteresis) != 0;
+
+		/* Take the designs from the float filters */
+		int	sample_filter_len;
+
+		if (prefilter) {
+			pre_filter = new AprsFilterFixed(AprsFrontEnd.bandpass(sample_rate));
+			pre_ring = new AprsRingFixed(pre_filter.length());
+		}
+
+		if (convolution) {
+			sample_filter_len = 25 * 3;
+
+			mark_cos_filter = new AprsFilterFixed(new AprsFilter(AprsFilter.filter_cos,
+									     AprsFilter.window_cosine,
+									     sample_filter_len,
+									     sample_rate,
+									     AprsDemod.mark_freq));
+			mark_sin_filter = new AprsFilterFixed(new AprsFilter(AprsFilter.filter_sin,
+									     AprsFilter.window_cosine,
+									     sample_filter_len,
+									     sample_rate,
+									     AprsDemod.mark_freq));
+			space_cos_filter = new AprsFilterFixed(new AprsFilter(AprsFilter.filter_cos,
+									      AprsFilter.window_cosine,
+									      sample_filter_len,
+									      sample_rate,
+									      AprsDemod.space_freq));
+			space_sin_filter = new AprsFilterFixed(new AprsFilter(AprsFilter.filter_sin,
+									      AprsFilter.window_cosine,
+									      sample_filter_len,
+									      sample_rate,
+									      AprsDemod.space_freq));
+		} else {
+			sample_filter_len = 77;
+
+			mark_g = new AprsGoertzelFixed(sample_rate, AprsDemod.mark_freq, sample_filter_len);
+			space_g = new AprsGoertzelFixed(sample_rate, AprsDemod.space_freq, sample_filter_len);
+		}
+
+		input_ring = new AprsRingFixed(sample_filter_len);
+
+		if (lowfilter) {
+			int	low_filter_len = 21 * 3;
+
+			low_filter = new AprsFilterFixed(new AprsFilter(AprsFilter.filter_lowpass,
+									AprsFilter.window_kaiser,
+									low_filter_len,
+									sample_rate,
+									1.16f * AprsDemod.baud_rate));
+
+			mark_ring = new AprsRingFixed(low_filter_len);
+			space_ring = new AprsRingFixed(low_filter_len);
+		}
+
+		mark_agc = new AprsAgcFixed(AprsDemod.agc_attack, AprsDemod.agc_decay);
+		space_agc = new AprsAgcFixed(AprsDemod.agc_attack, AprsDemod.agc_decay);
+
+		if (data instanceof AprsAX25) {
+			AprsAX25	ax25 = (AprsAX25) data;
+
+			ax25.recover = (options & AprsDemod.option_recover) != 0;
+			ax25.lazy = (options & AprsDemod.option_lazy) != 0;
+		}
+
+		if ((options & AprsDemod.option_packed) != 0) {
+			AprsDeframer	deframer = new AprsDeframer(data);
+
+			hdlc = deframer;
+			pll = new AprsPllFixed(deframer, sample_rate, AprsDemod.baud_rate);
+		} else {
+			hdlc = new AprsHdlc(data);
+			pll = new AprsPllFixed(hdlc, sample_rate, AprsDemod.baud_rate);
+		}
+	}
+
+	public AprsDemodFixed(AprsPacket packet, float sample_rate, int options) {
+		this(new AprsAX25(packet), sample_rate, options);
+	}
+
+	public AprsDemodFixed(AprsPacket packet, float sample_rate) {
+		this(packet, sample_rate, AprsDemod.default_options);
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Dot product of two float arrays, which is where the filters and
+ * detectors spend nearly all of their time. This is the portable
+ * version; the jar also carries one for newer JVMs which uses the
+ * vector API when it is available.
+ */
+class AprsDot {
+
+	/* Whether dot() uses vector instructions */
+	static boolean vector() {
+		return false;
+	}
+
+	static float scalar(float[] a, int a_off, float[] b, int b_off, int len) {
+		float	sum = 0.0f;
+
+		for (int i = 0; i < len; i++)
+			sum += a[a_off + i] * b[b_off + i];
+		return sum;
+	}
+
+	static float dot(float[] a, int a_off, float[] b, int b_off, int len) {
+		return scalar(a, a_off, b, b_off, len);
+	}
+}
@@ -58,12 +58,72 @@ public class AprsFcs {
 		0x7bc7, 0x6a4e, 0x58d5, 0x495c, 0x3de3, 0x2c6a, 0x1ef1, 0x0f78
 	};
 
+	/* Running the CRC over a frame and its own FCS always leaves this */
+	static final int	residue = 0xf0b8;
+
+	static final int	init = 0xffff;
+
+	/* Add one byte to a running CRC, which starts at 'init' */
+	static int update(int crc, byte b) {
+		return (crc >> 8) ^ ccitt_table[(crc ^ b) & 0xff];
+	}
+
 	static int fcs(byte[] data, int len) {
-		int	crc = 0xffff;
+		int	crc = init;
 
 		for (int i = 0; i < len; i++)
-			crc = (crc >> 8) ^ ccitt_table[(crc ^ data[i]) & 0xff];
+			crc = update(crc, data[i]);
 
 		return (crc ^ 0xffff) & 0xffff;
 	}
+
+	/*
+	 * Tables for slicing-by-8: slice_table[k][i] is the CRC of
+	 * byte i followed by k zero bytes, so eight bytes can be
+	 * folded in with eight independent lookups.
+	 */
+	static final int[][]	slice_table = new int[8][256];
+
+	static {
+		for (int i = 0; i < 256; i++)
+			slice_table[0][i] = ccitt_table[i];
+		for (int k = 1; k < 8; k++)
+			for (int i = 0; i < 256; i++) {
+				int c = slice_table[k - 1][i];
+				slice_table[k][i] = (c >> 8) ^ ccitt_table[c & 0xff];
+			}
+	}
+
+	/* Running CRC over data[off .. off+len), eight bytes at a time */
+	static int update(int crc, byte[] data, int off, int len) {
+		int[]	t0 = slice_table[0], t1 = slice_table[1], t2 = slice_table[2], t3 = slice_table[3];
+		int[]	t4 = slice_table[4], t5 = slice_table[5], t6 = slice_table[6], t7 = slice_table[7];
+		int	end = off + (len & ~7);
+
+		for (; off < end; off += 8) {
+			int lo = crc ^ ((data[off] & 0xff) | ((data[off + 1] & 0xff) << 8));
+
+			crc = (t7[lo & 0xff] ^
+			       t6[lo >> 8] ^
+			       t5[data[off + 2] & 0xff] ^
+			       t4[data[off + 3] & 0xff] ^
+			       t3[data[off + 4] & 0xff] ^
+			       t2[data[off + 5] & 0xff] ^
+			       t1[data[off + 6] & 0xff] ^
+			       t0[data[off + 7] & 0xff]);
+		}
+		for (len &= 7; len > 0; len--)
+			crc = update(crc, data[off++]);
+		return crc;
+	}
+
+	/* FCS of data[off .. off+len) using the sliced tables */
+	static public int fcs(byte[] data, int off, int len) {
+		return (update(init, data, off, len) ^ 0xffff) & 0xffff;
+	}
+
+	/* Whether a frame, including its trailing FCS, is intact */
+	static public boolean check(byte[] frame, int off, int len) {
+		return len >= 2 && update(init, frame, off, len) == residue;
+	}
 }
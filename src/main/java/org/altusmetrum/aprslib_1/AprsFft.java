@@ -0,0 +1,85 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * In-place iterative radix-2 complex FFT
+ */
+class AprsFft {
+
+	int	size;
+	int[]	reverse;
+	float[]	cos;
+	float[]	sin;
+
+	void transform(float[] re, float[] im, boolean inverse) {
+		int	n = size;
+
+		for (int i = 0; i < n; i++) {
+			int j = reverse[i];
+			if (j > i) {
+				float t;
+				t = re[i]; re[i] = re[j]; re[j] = t;
+				t = im[i]; im[i] = im[j]; im[j] = t;
+			}
+		}
+
+		for (int len = 2; len <= n; len <<= 1) {
+			int	half = len >> 1;
+			int	step = n / len;
+
+			for (int k = 0; k < half; k++) {
+				float	wr = cos[k * step];
+				float	wi = inverse ? sin[k * step] : -sin[k * step];
+
+				for (int a = k; a < n; a += len) {
+					int	b = a + half;
+					float	tr = re[b] * wr - im[b] * wi;
+					float	ti = re[b] * wi + im[b] * wr;
+
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+	static boolean power_of_two(int n) {
+		return n > 0 && (n & (n - 1)) == 0;
+	}
+
+	AprsFft(int size) throws IllegalArgumentException {
+		if (!power_of_two(size))
+			throw new IllegalArgumentException(String.format("FFT size %d not a power of two", size));
+
+		this.size = size;
+
+		int	bits = Integer.numberOfTrailingZeros(size);
+
+		reverse = new int[size];
+		for (int i = 0; i < size; i++)
+			reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+
+		cos = new float[size / 2];
+		sin = new float[size / 2];
+		for (int i = 0; i < size / 2; i++) {
+			cos[i] = (float) Math.cos(2 * Math.PI * i / size);
+			sin[i] = (float) Math.sin(2 * Math.PI * i / size);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Overlap-save FIR filtering using the FFT. Each segment of
+ * 'size' input samples, the last 'taps - 1' of which overlap the
+ * previous segment, yields 'step' output samples.
+ *
+ * The filter coefficients are real, so two segments are run at
+ * once, one in the real part and one in the imaginary part; the
+ * outputs come back in the same places.
+ */
+class AprsFftFilter {
+
+	/* Below this length the direct loop is as fast in practice,
+	 * whatever the operation counts say
+	 */
+	static final int	min_taps = 128;
+
+	/* Largest transform to consider */
+	static final int	max_size = 16384;
+
+	int		taps;
+	int		size;
+	int		step;
+	AprsFft		fft;
+
+	/* Transform of the time-reversed coefficients, scaled for the inverse */
+	float[]		h_re;
+	float[]		h_im;
+
+	float[]		re;
+	float[]		im;
+
+	/* Rough operation counts per output sample */
+	static double fft_cost(int taps, int size) {
+		int	step = size - taps + 1;
+		int	bits = Integer.numberOfTrailingZeros(size);
+
+		/* forward and inverse transform plus the multiply, two segments at a time */
+		return (10.0 * size * bits + 6.0 * size) / (2.0 * step);
+	}
+
+	static double direct_cost(int taps) {
+		return 2.0 * taps;
+	}
+
+	/*
+	 * Pick the cheapest transform size for these coefficients which
+	 * produces no more than 'block' samples per segment, or return
+	 * null when direct convolution is cheaper
+	 */
+	static AprsFftFilter design(float[] coeff, int block) {
+		int	taps = coeff.length;
+
+		if (taps < min_taps)
+			return null;
+
+		int	best_size = 0;
+		double	best_cost = direct_cost(taps) / 2;	/* FFT needs to win clearly */
+
+		for (int size = Integer.highestOneBit(taps) * 2; size <= max_size; size <<= 1) {
+			if (size - taps + 1 > block)
+				break;
+			double cost = fft_cost(taps, size);
+			if (cost < best_cost) {
+				best_cost = cost;
+				best_size = size;
+			}
+		}
+		if (best_size == 0)
+			return null;
+		return new AprsFftFilter(coeff, best_size);
+	}
+
+	int step() {
+		return step;
+	}
+
+	/*
+	 * Filter 'len' samples. 'work' holds taps - 1 samples of
+	 * history followed by the new samples.
+	 */
+	void filter(float[] work, int len, float[] out, int out_off) {
+		int	avail = taps - 1 + len;
+
+		for (int t = 0; t < len; t += 2 * step) {
+			int	t1 = t + step;
+
+			for (int i = 0; i < size; i++) {
+				int	a = t + i;
+				int	b = t1 + i;
+				re[i] = a < avail ? work[a] : 0.0f;
+				im[i] = b < avail ? work[b] : 0.0f;
+			}
+
+			fft.transform(re, im, false);
+			for (int i = 0; i < size; i++) {
+				float	r = re[i] * h_re[i] - im[i] * h_im[i];
+				float	m = re[i] * h_im[i] + im[i] * h_re[i];
+				re[i] = r;
+				im[i] = m;
+			}
+			fft.transform(re, im, true);
+
+			int	n = Math.min(step, len - t);
+			System.arraycopy(re, taps - 1, out, out_off + t, n);
+			if (t1 < len) {
+				n = Math.min(step, len - t1);
+				System.arraycopy(im, taps - 1, out, out_off + t1, n);
+			}
+		}
+	}
+
+	AprsFftFilter(float[] coeff, int size) {
+		this.taps = coeff.length;
+		this.size = size;
+		this.step = size - taps + 1;
+
+		fft = new AprsFft(size);
+
+		h_re = new float[size];
+		h_im = new float[size];
+		for (int i = 0; i < taps; i++)
+			h_re[i] = coeff[taps - 1 - i] / size;
+		fft.transform(h_re, h_im, false);
+
+		re = new float[size];
+		im = new float[size];
+	}
+}
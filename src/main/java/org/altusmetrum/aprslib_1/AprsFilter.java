@@ -88,21 +88,163 @@ public class AprsFilter {
 		return sum;
 	}
 
-	public float convolve(AprsRing ring) {
+	/*
+	 * Linear phase filters have coefficients which are symmetric
+	 * (or antisymmetric) around the center. For those, add (or
+	 * subtract) the two samples which share a coefficient first,
+	 * which halves the number of multiplies.
+	 *
+	 * On HotSpot the scalar folded loop measures slower than the
+	 * full one (AprsBench fold), as the add chain rather than the
+	 * multiplies limits it, and the vectorized dot product is faster
+	 * again. So folding is off unless fold_kernels is set, and is
+	 * never used with the vector API.
+	 */
+	static final float	symmetry_tolerance = 1e-6f;
+
+	static boolean		fold_kernels = false;
+
+	private float[]		fold;		/* first half of the coefficients, null if not symmetric */
+	private boolean		fold_anti;	/* antisymmetric instead of symmetric */
+	private float		fold_center;	/* middle tap for odd lengths */
+
+	private void symmetry() {
+		int	len = coeff.length;
+		int	half = len / 2;
+		float	max = 0.0f;
+
+		fold = null;
+
+		if (len < 2)
+			return;
+
+		for (int i = 0; i < len; i++)
+			max = Math.max(max, Math.abs(coeff[i]));
+
+		float	tol = max * symmetry_tolerance;
+		boolean	sym = true, anti = true;
+
+		for (int i = 0; i < half; i++) {
+			float a = coeff[i], b = coeff[len - 1 - i];
+			if (Math.abs(a - b) > tol)
+				sym = false;
+			if (Math.abs(a + b) > tol)
+				anti = false;
+		}
+		if ((len & 1) != 0 && Math.abs(coeff[half]) > tol)
+			anti = false;
+
+		if (!sym && !anti)
+			return;
+
+		/* An all-zero filter would match both */
+		fold_anti = !sym;
+
+		fold = new float[half];
+		for (int i = 0; i < half; i++) {
+			float b = coeff[len - 1 - i];
+			fold[i] = 0.5f * (coeff[i] + (fold_anti ? -b : b));
+		}
+		fold_center = ((len & 1) != 0 && !fold_anti) ? coeff[half] : 0.0f;
+	}
+
+	/* Whether the coefficients are symmetric or antisymmetric */
+	boolean symmetric() {
+		return fold != null;
+	}
+
+	/* Whether the folded kernel is in use */
+	boolean folded() {
+		return fold_kernels && fold != null && !AprsDot.vector();
+	}
+
+	private float convolve_folded(float[] data, int start) {
+		int	end = start + coeff.length - 1;
 		float	sum = 0.0f;
 
-		float[] data = ring.data;
-		int pos = ring.pos;
-		int part = coeff.length - pos;
-		int i;
-		for (i = 0; i < part; i++)
-			sum += data[pos+i] * coeff[i];
-		pos -= coeff.length;
-		for (; i < coeff.length; i++)
-			sum += data[pos+i] * coeff[i];
+		if (fold_anti) {
+			for (int i = 0; i < fold.length; i++)
+				sum += (data[start + i] - data[end - i]) * fold[i];
+		} else {
+			for (int i = 0; i < fold.length; i++)
+				sum += (data[start + i] + data[end - i]) * fold[i];
+		}
+		if ((coeff.length & 1) != 0)
+			sum += data[start + coeff.length / 2] * fold_center;
 		return sum;
 	}
 
+	/* Plain dot product over all of the taps */
+	float convolve_full(AprsRing ring) {
+		return AprsDot.dot(ring.data, ring.start(coeff.length), coeff, 0, coeff.length);
+	}
+
+	/* Folded dot product, or the full one if the filter isn't symmetric */
+	float convolve_folded(AprsRing ring) {
+		if (fold == null)
+			return convolve_full(ring);
+		return convolve_folded(ring.data, ring.start(coeff.length));
+	}
+
+	public float convolve(AprsRing ring) {
+		if (folded())
+			return convolve_folded(ring.data, ring.start(coeff.length));
+		return AprsDot.dot(ring.data, ring.start(coeff.length), coeff, 0, coeff.length);
+	}
+
+	/* FFT engine for long filters, built on first use */
+	private AprsFftFilter	fft;
+	private int		fft_block;	/* longest block the engine was designed for */
+	private float[]		fft_work;
+
+	/* Filter a block of samples, pushing each one through the ring
+	 * and storing the filter output. 'in' and 'out' may be the
+	 * same array. Long filters given large enough blocks use FFT
+	 * convolution, the rest are computed directly. The FFT size is
+	 * chosen for the longest block seen so far, so a short first
+	 * block doesn't rule out the FFT for the rest of the stream.
+	 */
+	public void convolve(AprsRing ring, float[] in, int in_off, float[] out, int out_off, int len) {
+		if (len > fft_block) {
+			fft = AprsFftFilter.design(coeff, len);
+			fft_block = len;
+		}
+		if (fft != null && len >= fft.step())
+			convolve_fft(ring, in, in_off, out, out_off, len);
+		else
+			convolve_direct(ring, in, in_off, out, out_off, len);
+	}
+
+	/* Whether block filtering has picked the FFT engine */
+	boolean uses_fft() {
+		return fft != null;
+	}
+
+	void convolve_direct(AprsRing ring, float[] in, int in_off, float[] out, int out_off, int len) {
+		for (int i = 0; i < len; i++) {
+			ring.put(in[in_off + i]);
+			out[out_off + i] = convolve(ring);
+		}
+	}
+
+	private void convolve_fft(AprsRing ring, float[] in, int in_off, float[] out, int out_off, int len) {
+		int	history = coeff.length - 1;
+
+		if (fft_work == null || fft_work.length < history + len)
+			fft_work = new float[history + len];
+
+		/* Gather the history from the ring and the new samples
+		 * in one place, then leave the ring as if the samples
+		 * had been filtered one at a time
+		 */
+		System.arraycopy(ring.data, ring.start(history), fft_work, 0, history);
+		System.arraycopy(in, in_off, fft_work, history, len);
+
+		fft.filter(fft_work, len, out, out_off);
+
+		ring.put(fft_work, history, len);
+	}
+
 	public static double bessi0(double x) {
 		double ax,ans;
 		double y;
@@ -130,7 +272,7 @@ public class AprsFilter {
 	private float coeff(int filter, int i) throws IllegalArgumentException {
 		float	offset = i - center;
 
-		float v, check;
+		float v;
 		switch (filter) {
 		case filter_cos:
 			return cosf(offset * cps * 2 * pi);
@@ -141,7 +283,6 @@ public class AprsFilter {
 				v = 2*cps;
 			else
 				v = sinf(2.0f * cps * pi * offset) / (pi * offset);
-			check = 2.0f * cps * sinc(2.0f * cps * offset);
 			return v;
 		case filter_highpass:
 			if (offset == 0)
@@ -153,10 +294,6 @@ public class AprsFilter {
 			else
 				v = sinf(2 * pi * cps_high * offset) / (pi * offset) -
 					sinf(2 * pi * cps_low * offset) / (pi * offset);
-			check = 2.0f * cps_high * sinc(2.0f * cps_high * offset) -
-				2.0f * cps_low * sinc(2.0f * cps_low * offset);
-			if (Math.abs(v - check) > 1e-4)
-				System.out.printf("bad bandpass old %f new %f\n", v, check);
 			return v;
 		default:
 			throw new IllegalArgumentException(String.format("Unknown filter %d", filter));
@@ -257,6 +394,25 @@ public class AprsFilter {
 			coeff[i] = c * s;
 		}
 		normalize();
+		symmetry();
+	}
+
+	/* Take the coefficients from the cache, or build them and
+	 * add them to the cache. The cached copy holds only the
+	 * read-only design, none of the block filtering state
+	 */
+	private void design(AprsCoeffCache.Key key, int filter, int window, int size, float samples_per_second) {
+		AprsFilter	shared = (AprsFilter) AprsCoeffCache.get(key);
+
+		if (shared == null) {
+			build(filter, window, size, samples_per_second);
+			shared = (AprsFilter) AprsCoeffCache.put(key, new AprsFilter(this));
+		}
+		center = shared.center;
+		coeff = shared.coeff;
+		fold = shared.fold;
+		fold_anti = shared.fold_anti;
+		fold_center = shared.fold_center;
 	}
 
 	public AprsFilter convolve(AprsFilter other) {
@@ -268,6 +424,24 @@ public class AprsFilter {
 			c.coeff[i] = convolve(other.coeff, offset);
 		}
 		c.normalize();
+		c.symmetry();
+		return c;
+	}
+
+	/*
+	 * Build a single filter with the same response as running
+	 * samples through this filter and then through 'other'. The
+	 * result is the full linear convolution of the two sets of
+	 * coefficients and is not normalized, so the gain matches the
+	 * cascade.
+	 */
+	public AprsFilter cascade(AprsFilter other) {
+		AprsFilter c = new AprsFilter(length() + other.length() - 1);
+
+		for (int i = 0; i < length(); i++)
+			for (int j = 0; j < other.length(); j++)
+				c.coeff[i + j] += coeff[i] * other.coeff[j];
+		c.symmetry();
 		return c;
 	}
 
@@ -288,6 +462,7 @@ public class AprsFilter {
 		for (int i = 0; i < c.length(); i++)
 			c.coeff[i] = coeff[i - off_this] + other.coeff[i - off_other];
 		c.normalize();
+		c.symmetry();
 		return c;
 	}
 
@@ -295,6 +470,18 @@ public class AprsFilter {
 		init(size);
 	}
 
+	/* Copy of the design of 'other', sharing its arrays */
+	private AprsFilter(AprsFilter other) {
+		center = other.center;
+		cps = other.cps;
+		cps_low = other.cps_low;
+		cps_high = other.cps_high;
+		coeff = other.coeff;
+		fold = other.fold;
+		fold_anti = other.fold_anti;
+		fold_center = other.fold_center;
+	}
+
 	public AprsFilter(int filter, int window, int size, float samples_per_second, float freq) throws IllegalArgumentException {
 
 		if (filter == filter_bandpass)
@@ -302,7 +489,9 @@ public class AprsFilter {
 
 		cps = freq / samples_per_second;
 
-		build(filter, window, size, samples_per_second);
+		design(new AprsCoeffCache.Key(AprsCoeffCache.kind_filter, filter, window, size,
+					      samples_per_second, freq, 0.0f),
+		       filter, window, size, samples_per_second);
 	}
 
 	public AprsFilter(int filter, int window, int size, float samples_per_second, float low, float high) throws IllegalArgumentException {
@@ -315,6 +504,8 @@ public class AprsFilter {
 		/* middle of passband */
 		cps = (cps_low + cps_high) / 2.0f;
 
-		build(filter, window, size, samples_per_second);
+		design(new AprsCoeffCache.Key(AprsCoeffCache.kind_filter, filter, window, size,
+					      samples_per_second, low, high),
+		       filter, window, size, samples_per_second);
 	}
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * FIR filter with Q15 coefficients, quantized from an AprsFilter
+ * design. Products are summed in a long, so long filters can't
+ * overflow, and the result is in the same units as the input.
+ */
+public class AprsFilterFixed {
+
+	static final int	q = 15;
+
+	int[]	coeff;
+
+	static int q15(double f) {
+		long	v = Math.round(f * (1 << q));
+
+		return (int) Math.max(-32768, Math.min(32767, v));
+	}
+
+	static int[] q15(float[] f) {
+		int[]	c = new int[f.length];
+
+		for (int i = 0; i < f.length; i++)
+			c[i] = q15(f[i]);
+		return c;
+	}
+
+	/* Multiply the window ending with the newest sample in 'data'
+	 * starting at 'start' by 'c'
+	 */
+	static long dot(int[] data, int start, int[] c) {
+		long	sum = 0;
+
+		for (int i = 0; i < c.length; i++)
+			sum += (long) data[start + i] * c[i];
+		return sum;
+	}
+
+	public int convolve(AprsRingFixed ring) {
+		return (int) (dot(ring.data, ring.start(coeff.length), coeff) >> q);
+	}
+
+	/* Filter a block in place, pushing each sample through the ring */
+	public void convolve(AprsRingFixed ring, int[] buf, int off, int len) {
+		for (int i = off; i < off + len; i++) {
+			ring.put(buf[i]);
+			buf[i] = convolve(ring);
+		}
+	}
+
+	/* sqrt(i) * 16 for the top bits of the isqrt argument */
+	static final int[]	sqrt_table = new int[1024];
+
+	static {
+		for (int i = 0; i < sqrt_table.length; i++)
+			sqrt_table[i] = (int) Math.round(Math.sqrt(i) * 16);
+	}
+
+	/*
+	 * Integer square root. A table lookup on the top ten bits is
+	 * good to about 0.5%, and one Newton step takes that to a few
+	 * parts per million, which is far below the Q15 resolution of
+	 * the rest of the pipeline.
+	 */
+	static int isqrt(long v) {
+		if (v < sqrt_table.length)
+			return sqrt_table[(int) v] >> 4;
+
+		int	e = (64 - Long.numberOfLeadingZeros(v) - 9) & ~1;
+		long	r = ((long) sqrt_table[(int) (v >> e)] << (e >> 1)) >> 4;
+
+		return (int) ((r + v / r) >> 1);
+	}
+
+	static int magnitude(long re, long im) {
+		return isqrt(re * re + im * im);
+	}
+
+	public int length() {
+		return coeff.length;
+	}
+
+	public AprsFilterFixed(AprsFilter filter) {
+		coeff = q15(filter.coeff);
+	}
+}
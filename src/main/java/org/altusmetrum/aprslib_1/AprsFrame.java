@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * A view of an AX.25 frame, without the FCS, in the bytes it was
+ * received into. Field accessors return offsets and values from
+ * those bytes, and the comparisons work on them directly, so that
+ * packets can be filtered or forwarded without building strings.
+ *
+ * The view handed out by AprsAX25 is only good until the next frame
+ * arrives; use copy() to keep it.
+ */
+public class AprsFrame {
+	byte[]	data;
+	int	length;		/* Bytes in the frame, without the FCS */
+	int	num_addr;	/* 0 when the address field is broken */
+
+	/* Point the view at a new frame */
+	void set(byte[] data, int length, int num_addr) {
+		this.data = data;
+		this.length = length;
+		this.num_addr = num_addr;
+	}
+
+	private int frame(int i) {
+		return data[i] & 0xff;
+	}
+
+	public byte[] data() {
+		return data;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public int num_addr() {
+		return num_addr;
+	}
+
+	public int address_offset(int n) {
+		return n * 7;
+	}
+
+	/* Callsign characters before the space padding */
+	public int callsign_length(int n) {
+		int	off = address_offset(n);
+		int	len = 0;
+
+		while (len < 6 && (frame(off + len) >> 1) > ' ')
+			len++;
+		return len;
+	}
+
+	public int ssid(int n) {
+		if (n < 0 || n >= num_addr)
+			return 0;
+		return (frame(address_offset(n) + 6) & AprsAX25.SSID_SSID_MASK) >> AprsAX25.SSID_SSID_SHIFT;
+	}
+
+	public boolean repeated(int n) {
+		if (n < 0 || n >= num_addr)
+			return false;
+		return (frame(address_offset(n) + 6) & AprsAX25.SSID_H_MASK) != 0;
+	}
+
+	/* Whether address n has this callsign, ignoring the SSID */
+	public boolean callsign_is(int n, String callsign) {
+		if (n < 0 || n >= num_addr)
+			return false;
+
+		int	off = address_offset(n);
+		int	len = callsign.length();
+
+		if (len > 6 || len != callsign_length(n))
+			return false;
+		for (int i = 0; i < len; i++)
+			if ((frame(off + i) >> 1) != callsign.charAt(i))
+				return false;
+		return true;
+	}
+
+	public boolean address_is(int n, String callsign, int ssid) {
+		return callsign_is(n, callsign) && ssid(n) == ssid;
+	}
+
+	/* Whether address n here and address m of 'o' name the same
+	 * station. The has-been-repeated and reserved bits are ignored
+	 */
+	public boolean address_equals(int n, AprsFrame o, int m) {
+		if (n < 0 || n >= num_addr || m < 0 || m >= o.num_addr)
+			return false;
+
+		int	a = address_offset(n);
+		int	b = o.address_offset(m);
+
+		for (int i = 0; i < 6; i++)
+			if (data[a + i] != o.data[b + i])
+				return false;
+		return ((data[a + 6] ^ o.data[b + 6]) & AprsAX25.SSID_SSID_MASK) == 0;
+	}
+
+	public int control_offset() {
+		return num_addr * 7;
+	}
+
+	public int control() {
+		if (num_addr >= 2 && control_offset() < length)
+			return frame(control_offset());
+		return -1;
+	}
+
+	public int pid_offset() {
+		return control_offset() + 1;
+	}
+
+	/* Bytes of PID; none for frames other than I and UI */
+	int num_pid() {
+		if (pid_offset() >= length)
+			return 0;
+
+		int c = frame(control_offset());
+
+		if ((c & 0x01) == 0x00 ||		/* I  xxxx xxx0 */
+		    (c & 0xef) == 0x03) {		/* UI 000x 0011 */
+
+			int pid = frame(pid_offset());
+			if (pid == 0xff)
+				return 2;		/* pid 0xff means there's another one */
+			return 1;
+		}
+		return 0;
+	}
+
+	public int pid() {
+		if (num_addr >= 2 && pid_offset() < length)
+			return frame(pid_offset());
+		return -1;
+	}
+
+	/* Without a valid address field, the whole frame is info */
+	public int info_offset() {
+		if (num_addr < 2)
+			return 0;
+
+		int	off = pid_offset() + num_pid();
+
+		return off < length ? off : length;
+	}
+
+	public int info_length() {
+		int	len = length - info_offset();
+
+		if (len < 0)
+			return 0;
+		return len;
+	}
+
+	/* Byte 'i' of the information field */
+	public int info(int i) {
+		return frame(info_offset() + i);
+	}
+
+	public boolean info_equals(AprsFrame o) {
+		int	len = info_length();
+
+		if (len != o.info_length())
+			return false;
+
+		int	a = info_offset();
+		int	b = o.info_offset();
+
+		for (int i = 0; i < len; i++)
+			if (data[a + i] != o.data[b + i])
+				return false;
+		return true;
+	}
+
+	/* Callsign bytes are shifted, so decode them by hand */
+	public String callsign(int n) {
+		int	off = address_offset(n);
+		int	len = callsign_length(n);
+		char[]	c = new char[len];
+
+		for (int i = 0; i < len; i++)
+			c[i] = (char) (frame(off + i) >> 1);
+		return new String(c);
+	}
+
+	/* Callsign and SSID packed as in AprsAddress.key */
+	public long address_key(int n) {
+		return AprsAddress.pack(data, address_offset(n));
+	}
+
+	/* The shared AprsAddress for address 'n' */
+	public AprsAddress address(int n) {
+		if (n < 0 || n >= num_addr)
+			return new AprsAddress("??????", 0);
+		return AprsAddressTable.intern(address_key(n));
+	}
+
+	public String info() {
+		return new String(data, info_offset(), info_length(), StandardCharsets.ISO_8859_1);
+	}
+
+	/* A view of a private copy of the frame */
+	public AprsFrame copy() {
+		AprsFrame	c = new AprsFrame();
+
+		c.set(Arrays.copyOf(data, length), length, num_addr);
+		return c;
+	}
+
+	public AprsFrame(byte[] data, int length, int num_addr) {
+		set(data, length, num_addr);
+	}
+
+	public AprsFrame() {
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import java.util.*;
+
+/*
+ * Input conditioning ahead of the tone detectors: the bandpass
+ * prefilter (FIR or IIR) and, optionally, decimation. The output
+ * can feed any number of AprsBackEnd detector/slicer chains, so
+ * the prefilter cost is paid once however many are attached.
+ *
+ * Uses the option_preiir, option_prefilter and option_decimate
+ * bits of the AprsDemod options.
+ */
+public class AprsFrontEnd {
+
+	boolean preiir;			/* Enable iir prefilter */
+	boolean prefilter;		/* Enable bandpass prefilter */
+	boolean decimate;		/* Reduce the sample rate */
+
+	/* Bandpass prefilter. This can use more samples
+	 * than the detectors and hence filter out noise
+	 * better
+	 */
+	AprsBiquad	pre_iir;
+	static final int pre_iir_order = 3;	/* 6 poles */
+	AprsFilter	pre_filter;
+	AprsRing	pre_ring;
+
+	/* Bandpass prefilter combined with decimation, which is
+	 * used in place of pre_filter when 'decimate' is set
+	 */
+	AprsDecimator	decimator;
+
+	float		sample_rate;	/* output rate */
+	int		factor = 1;
+
+	/* Back ends fed by demod() */
+	List<AprsBackEnd>	back_ends = new ArrayList<AprsBackEnd>();
+
+	/* Filtered output of the last block */
+	float[]		output = new float[AprsDemod.block_size];
+
+	private float	value;
+
+	/* Filter one sample. Returns false when the decimator drops
+	 * it, otherwise the filtered value is available from get()
+	 */
+	public boolean put(float input) {
+		if (decimate) {
+			if (preiir)
+				input = pre_iir.filter(input);
+
+			/* Bandpass and drop samples, only continuing
+			 * with the ones which are kept
+			 */
+			if (!decimator.put(input))
+				return false;
+			input = decimator.get();
+		} else {
+			/* Prefilter with a bandpass to reduce noise outside of the
+			 * audio range
+			 */
+			if (prefilter) {
+				pre_ring.put(input);
+				input = pre_filter.convolve(pre_ring);
+			}
+			if (preiir)
+				input = pre_iir.filter(input);
+		}
+		value = input;
+		return true;
+	}
+
+	public float get() {
+		return value;
+	}
+
+	/* Filter up to block_size samples into 'output', returning
+	 * the number of output samples
+	 */
+	public int filter(float[] buf, int off, int len) {
+		float[] out = output;
+
+		if (decimate) {
+			if (preiir) {
+				System.arraycopy(buf, off, out, 0, len);
+				pre_iir.filter(out, 0, len);
+				buf = out;
+				off = 0;
+			}
+			return decimator.decimate(buf, off, len, out, 0);
+		}
+
+		if (prefilter)
+			pre_filter.convolve(pre_ring, buf, off, out, 0, len);
+		else
+			System.arraycopy(buf, off, out, 0, len);
+
+		if (preiir)
+			pre_iir.filter(out, 0, len);
+		return len;
+	}
+
+	public void add(AprsBackEnd back) {
+		back_ends.add(back);
+	}
+
+	public void demod(float input) {
+		if (put(input))
+			for (AprsBackEnd back : back_ends)
+				back.demod(value);
+	}
+
+	/* Filter a block of samples and hand the result to each back end */
+	public void demod(float[] buf, int off, int len) {
+		while (len > 0) {
+			int n = Math.min(len, AprsDemod.block_size);
+			int m = filter(buf, off, n);
+
+			for (AprsBackEnd back : back_ends)
+				back.demod(output, 0, m);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/* Samples of silence at the input rate needed to push
+	 * everything through the front end and 'back_delay' output
+	 * samples of back end delay
+	 */
+	public int flush_len(int back_delay) {
+		if (decimate)
+			return back_delay * factor + (decimator.length() + 1) / 2;
+		if (prefilter)
+			return back_delay + (pre_ring.length() + 1) / 2;
+		return back_delay;
+	}
+
+	public void flush() {
+		int	delay = 0;
+
+		for (AprsBackEnd back : back_ends)
+			delay = Math.max(delay, back.delay());
+
+		int	flush = flush_len(delay);
+
+		demod(new float[flush], 0, flush);
+		for (AprsBackEnd back : back_ends)
+			back.flush();
+	}
+
+	/* Sample rate of the filtered output */
+	public float sample_rate() {
+		return sample_rate;
+	}
+
+	public int factor() {
+		return factor;
+	}
+
+	/* The FIR bandpass used by the prefilter, which the back ends
+	 * can also fold into their detectors
+	 */
+	static AprsFilter bandpass(float sample_rate) {
+		float	half_band = AprsDemod.baud_rate * AprsDemod.pre_filter_baud;
+		int	pre_filter_len = 64 * 3;
+
+		return new AprsFilter(AprsFilter.filter_bandpass,
+				      AprsFilter.window_kaiser,
+				      pre_filter_len,
+				      sample_rate,
+				      Math.min(AprsDemod.mark_freq, AprsDemod.space_freq) - half_band,
+				      Math.max(AprsDemod.mark_freq, AprsDemod.space_freq) + half_band);
+	}
+
+	public AprsFrontEnd(float sample_rate, int options) {
+		this.preiir = (options & AprsDemod.option_preiir) != 0;
+		this.prefilter = (options & AprsDemod.option_prefilter) != 0;
+		this.decimate = (options & AprsDemod.option_decimate) != 0;
+
+		/* The iir prefilter runs ahead of any decimation, so it
+		 * is designed at the input rate
+		 */
+		if (preiir) {
+			float	half_band = AprsDemod.baud_rate * AprsDemod.pre_filter_baud;
+
+			pre_iir = AprsBiquad.bandpass(pre_iir_order,
+						      sample_rate,
+						      Math.min(AprsDemod.mark_freq, AprsDemod.space_freq) - half_band,
+						      Math.max(AprsDemod.mark_freq, AprsDemod.space_freq) + half_band);
+		}
+
+		if (decimate) {
+			factor = AprsDemod.decimation(sample_rate);
+
+			/* The bandpass is designed at the input rate, which is
+			 * where it runs. Its upper edge is well below half of
+			 * the decimated rate so it also keeps out aliases
+			 */
+			decimator = new AprsDecimator(bandpass(sample_rate), factor);
+
+			sample_rate /= factor;
+		} else if (prefilter) {
+			pre_filter = bandpass(sample_rate);
+			pre_ring = new AprsRing(pre_filter.length());
+		}
+
+		this.sample_rate = sample_rate;
+	}
+}
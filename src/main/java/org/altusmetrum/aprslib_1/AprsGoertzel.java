@@ -34,38 +34,48 @@ public class AprsGoertzel {
 
 	int	length;
 
-	float	coeff;
-
-	float[]	window;
+	/*
+	 * The Goertzel recurrence computes a single DFT bin. Run over a
+	 * fixed window, that's the same as correlating the windowed
+	 * samples with a cos/sin pair at the bin frequency, which turns
+	 * it into two dot products instead of a serial recurrence.
+	 */
+	float[]	cos_window;
+	float[]	sin_window;
 
 	int window_type = AprsFilter.window_hamming;
 
 	public float filter(AprsRing ring) {
+		float[] data = ring.data;
+		int start = ring.start(length);
 
-		/* Reset */
-		float	q2 = 0.0f;
-		float	q1 = 0.0f;
-
-		for (int i = 0; i < length; i++) {
-			float sample = window[i] * ring.get(i);
+		float re = AprsDot.dot(data, start, cos_window, 0, length);
+		float im = AprsDot.dot(data, start, sin_window, 0, length);
 
-			float q0 = coeff * q1 - q2 + sample;
-			q2 = q1;
-			q1 = q0;
-		}
-		return (float) Math.sqrt (q1 * q1 + q2 * q2 - q1 * q2 * coeff);
+		return (float) Math.sqrt (re * re + im * im);
 	}
 
 	public AprsGoertzel (float sample_rate, float frequency, int length) {
 
-		window = new float[length];
-		for (int i = 0; i < length; i++)
-			window[i] = AprsFilter.window(window_type, length, i, sample_rate);
-
 		this.length = length;
 
 		int k = (int) Math.round(length * frequency / sample_rate);
 
-		coeff = 2.0f * cosf(2.0f * pi * k / length);
+		/* Detectors with the same bin share one pair of tables */
+		AprsCoeffCache.Key key = new AprsCoeffCache.Key(AprsCoeffCache.kind_goertzel, k, window_type,
+								 length, sample_rate, 0.0f, 0.0f);
+		float[][] windows = (float[][]) AprsCoeffCache.get(key);
+
+		if (windows == null) {
+			windows = new float[2][length];
+			for (int i = 0; i < length; i++) {
+				float w = AprsFilter.window(window_type, length, i, sample_rate);
+				windows[0][i] = w * cosf(2.0f * pi * k * i / length);
+				windows[1][i] = w * sinf(2.0f * pi * k * i / length);
+			}
+			windows = (float[][]) AprsCoeffCache.put(key, windows);
+		}
+		cos_window = windows[0];
+		sin_window = windows[1];
 	}
 }
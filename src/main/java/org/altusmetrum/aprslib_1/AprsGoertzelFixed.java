@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Goertzel detector with the windowed cos/sin tables of an
+ * AprsGoertzel quantized to Q15.
+ */
+public class AprsGoertzelFixed {
+
+	int	length;
+	int[]	cos_window;
+	int[]	sin_window;
+
+	public int filter(AprsRingFixed ring) {
+		int	start = ring.start(length);
+		long	re = AprsFilterFixed.dot(ring.data, start, cos_window) >> AprsFilterFixed.q;
+		long	im = AprsFilterFixed.dot(ring.data, start, sin_window) >> AprsFilterFixed.q;
+
+		return AprsFilterFixed.magnitude(re, im);
+	}
+
+	public AprsGoertzelFixed(float sample_rate, float frequency, int length) {
+		AprsGoertzel	g = new AprsGoertzel(sample_rate, frequency, length);
+
+		this.length = length;
+		cos_window = AprsFilterFixed.q15(g.cos_window);
+		sin_window = AprsFilterFixed.q15(g.sin_window);
+	}
+}
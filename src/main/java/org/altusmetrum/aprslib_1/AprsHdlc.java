@@ -28,7 +28,10 @@ public class AprsHdlc implements AprsBit {
 	int		octet;
 	int		octet_len;	/* -1 means not in a packet */
 	boolean		data_detect;
+	boolean		skipping;	/* Frame abandoned by data */
+	long		skipped_bits;	/* Bits dropped while skipping */
 	AprsData	data;
+	AprsTrace	trace;
 
 	/* Receive a single bit, run the raw state machine and send
 	 * decoded bytes along
@@ -43,8 +46,14 @@ public class AprsHdlc implements AprsBit {
 			prev_raw = raw;
 			bit = 0;
 		}
+		step(bit);
+	}
+
+	/* One NRZI-decoded bit through the state machine */
+	void step(int bit) {
+		if (trace != null)
+			trace.bit(bit);
 
-		System.out.print(bit);
 		/* Run two raw bit-level pattern detectors */
 
 		frame_pattern >>= 1;
@@ -73,17 +82,21 @@ public class AprsHdlc implements AprsBit {
 
 		/* When we see the framing pattern, start decoding bytes */
 		if (frame_pattern == 0x7e) {
-			System.out.println(" Flag decoded");
+			if (trace != null)
+				trace.flag();
 			data.start();
 			octet_len = 0;
+			skipping = false;
 		} else if (frame_pattern == 0xfe) {
-			System.out.println(" 0xFE decoded");
+			if (trace != null)
+				trace.abort();
 			data.stop();
 			octet_len = -1;
+			skipping = false;
 		} else if ((frame_pattern & 0xfc) == 0x7c) {
 			/* Bit stuffing, drop the following zero */
-			System.out.println(" Bit stuffing detected");
-			;
+			if (trace != null)
+				trace.stuff();
 		} else 	if (octet_len >= 0) {
 			octet >>= 1;
 			if (bit == 1)
@@ -91,11 +104,19 @@ public class AprsHdlc implements AprsBit {
 			octet_len++;
 			if (octet_len == 8) {
 				octet_len = 0;
-				data.data((byte) octet);
-				
-				System.out.println(String.format(" Decoded byte: %s", octet));
+				if (!data.data((byte) octet))
+					skip();
+				if (trace != null)
+					trace.octet(octet);
 			}
-		}
+		} else if (skipping)
+			skipped_bits++;
+	}
+
+	/* Stop assembling octets until the next flag */
+	void skip() {
+		octet_len = -1;
+		skipping = true;
 	}
 
 	public boolean in_frame() {
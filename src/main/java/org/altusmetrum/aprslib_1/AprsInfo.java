@@ -0,0 +1,677 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+/*
+ * This code uses ideas and algorithms from Dire Wolf, an amateur
+ * radio packet TNC which was written by John Langner, WB2OSZ. That
+ * project is also licensed under the GPL, either version 3 of the
+ * License or (at your option) any later version.
+ */
+
+package org.altusmetrum.aprslib_1;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Decodes the fixed-format parts of an APRS information field by
+ * walking its bytes with a cursor: plain and compressed positions,
+ * with or without a timestamp, objects, messages and Mic-E, plus the
+ * CSE/SPD and /A= comment extensions, and raw NMEA sentences from
+ * GPS receivers. Numbers go straight into the
+ * fields below and text is left as offsets into the frame, so an
+ * AprsInfo can be reused for every packet without allocating.
+ *
+ * Each decoder returns false, leaving the fields in an unspecified
+ * state, when the information field is too short or malformed.
+ */
+public class AprsInfo {
+	static final int	UNKNOWN = AprsAprs.UNKNOWN;
+
+	byte[]	data;
+	int	start;		/* Offset of the data type indicator */
+	int	end;		/* End of the information field */
+	int	pos;		/* Cursor */
+
+	public char	symbol_table;
+	public char	symbol_code;
+	public double	latitude;
+	public double	longitude;
+	public double	speed_mph;
+	public double	course;
+	public double	altitude_ft;
+	public double	range;
+
+	/* Object name and message addressee, trimmed */
+	public int	name_offset, name_end;
+
+	/* Message text */
+	public int	message_offset;
+
+	/* Comment, less the bytes from cut_offset to cut_end */
+	public int	comment_offset, comment_end;
+	public int	cut_offset, cut_end;
+
+	/* NMEA sentence fields; field 0 is the talker and sentence name */
+	static final int	nmea_max_fields = 24;
+
+	int[]		field_start = new int[nmea_max_fields];
+	int[]		field_end = new int[nmea_max_fields];
+	int		fields;
+
+	/* nmea() results */
+	public static final int	nmea_ok = 0;
+	public static final int	nmea_unknown = 1;	/* Not a sentence decoded here */
+	public static final int	nmea_checksum = 2;	/* Checksum mismatch */
+	public static final int	nmea_invalid = 3;	/* Malformed field */
+
+	/* Point at the information field of 'frame' */
+	public void set(AprsFrame frame) {
+		set(frame.data(), frame.info_offset(), frame.info_length());
+	}
+
+	public void set(byte[] data, int offset, int length) {
+		this.data = data;
+		start = offset;
+		end = offset + length;
+		pos = start;
+
+		symbol_table = '/';
+		symbol_code = ' ';
+		latitude = UNKNOWN;
+		longitude = UNKNOWN;
+		speed_mph = UNKNOWN;
+		course = UNKNOWN;
+		altitude_ft = UNKNOWN;
+		range = UNKNOWN;
+		name_offset = name_end = start;
+		message_offset = end;
+		comment_offset = comment_end = end;
+		cut_offset = cut_end = end;
+	}
+
+	public int length() {
+		return end - start;
+	}
+
+	/* Byte 'i' of the information field */
+	public int at(int i) {
+		return data[start + i] & 0xff;
+	}
+
+	public int dti() {
+		if (start == end)
+			return -1;
+		return at(0);
+	}
+
+	static boolean is_digit(int c) {
+		return '0' <= c && c <= '9';
+	}
+
+	/* Read 'n' decimal digits at the cursor, -1 if they aren't */
+	private int digits(int n) {
+		int	v = 0;
+
+		for (int i = 0; i < n; i++) {
+			int	c = data[pos++] & 0xff;
+
+			if (!is_digit(c))
+				return -1;
+			v = v * 10 + c - '0';
+		}
+		return v;
+	}
+
+	private char next() {
+		return (char) (data[pos++] & 0xff);
+	}
+
+	/* ddmm.hhN, or dddmm.hhE with 'deg' of 3. NaN if malformed */
+	private double coordinate(int deg, char negative) {
+		int	d = digits(deg);
+		int	m = digits(2);
+
+		pos++;				/* . */
+
+		int	h = digits(2);
+		char	flag = next();
+
+		if (d < 0 || m < 0 || h < 0)
+			return Double.NaN;
+
+		double result = 0;
+
+		result += d;
+		result += m / 60.0;
+		result += h / 60.0 / 100;
+		if (flag == negative || flag == Character.toLowerCase(negative))
+			result = -result;
+		return result;
+	}
+
+	/* Four base91 digits at the cursor */
+	private int base91() {
+		int	v = 0;
+
+		for (int i = 0; i < 4; i++)
+			v = v * 91 + (next() - 33);
+		return v;
+	}
+
+	/* Uncompressed position at 'offset' */
+	boolean position(int offset) {
+		if (length() < offset + 19)
+			return false;
+		pos = start + offset;
+
+		latitude = coordinate(2, 'S');
+		symbol_table = next();
+		longitude = coordinate(3, 'W');
+		symbol_code = next();
+		comment_offset = pos;
+		comment_end = end;
+		return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+	}
+
+	static char compressed_table(char id) {
+		if (id == '/' || id == '\\' || Character.isUpperCase(id))
+			return id;
+		else if ('a' <= id && id <= 'j')
+			return (char) (id - 'a' + '0');
+		else
+			return '/';
+	}
+
+	static double knots_to_mph(double knots) {
+		return knots * 1.15077945;
+	}
+
+	/* Compressed position at 'offset' */
+	boolean compressed(int offset) {
+		if (length() < offset + 13)
+			return false;
+		pos = start + offset;
+
+		symbol_table = compressed_table(next());
+		latitude = 90 - base91() / 380926.0;
+		longitude = -180 + base91() / 190463.0;
+		symbol_code = next();
+
+		char	c = next();
+		char	s = next();
+		char	t = next();
+
+		if (c == ' ') {
+			;	/* ignore other two bytes */
+		} else {
+			if (((t - 33) & 0x18) == 0x10)
+				altitude_ft = Math.pow(1.002, (c - 33) * 91 + s - 33);
+			else if (c == '{')
+				range = 2.0 * Math.pow(1.08, s - 33);
+			else if (c >= '!' && c <= 'z') {
+				course = (c - 33) * 4;
+				speed_mph = knots_to_mph(Math.pow(1.08, s - 33) - 1.0);
+			}
+		}
+		comment_offset = pos;
+		comment_end = end;
+		return true;
+	}
+
+	/* Object name or message addressee, nine bytes at 1 */
+	private void trim_name() {
+		name_offset = start + 1;
+		name_end = start + 10;
+		while (name_offset < name_end && (data[name_offset] & 0xff) <= ' ')
+			name_offset++;
+		while (name_end > name_offset && (data[name_end - 1] & 0xff) <= ' ')
+			name_end--;
+	}
+
+	/* Whether the object at the cursor has a compressed position */
+	boolean object_compressed() {
+		return length() > 18 && !is_digit(at(18));
+	}
+
+	boolean object() {
+		if (length() <= 18)
+			return false;
+		trim_name();
+		if (object_compressed())
+			return compressed(18);
+
+		/* The course and speed at 37 are skipped */
+		if (length() < 44 || !position(18))
+			return false;
+		comment_offset = start + 44;
+		return true;
+	}
+
+	boolean text_message() {
+		if (length() < 11)
+			return false;
+		trim_name();
+		message_offset = start + 11;
+		return true;
+	}
+
+	/* Mic-E destination digit */
+	static int mic_e_digit(int c) {
+		if ('0' <= c && c <= '9')
+			return c - '0';
+		if ('A' <= c && c <= 'J')
+			return c - 'A';
+		if ('P' <= c && c <= 'Y')
+			return c - 'P';
+		return 0;
+	}
+
+	/* Mic-E, with the latitude carried in the destination address */
+	boolean mic_e(AprsFrame frame) {
+		if (length() < 9 || frame.callsign_length(AprsAX25.AX25_DESTINATION) < 6)
+			return false;
+
+		byte[]	d = frame.data();
+		int	o = frame.address_offset(AprsAX25.AX25_DESTINATION);
+		int	dest0 = (d[o + 0] & 0xff) >> 1;
+		int	dest1 = (d[o + 1] & 0xff) >> 1;
+		int	dest2 = (d[o + 2] & 0xff) >> 1;
+		int	dest3 = (d[o + 3] & 0xff) >> 1;
+		int	dest4 = (d[o + 4] & 0xff) >> 1;
+		int	dest5 = (d[o + 5] & 0xff) >> 1;
+
+		latitude = (mic_e_digit(dest0) * 10 +
+			    mic_e_digit(dest1) +
+			    (mic_e_digit(dest2) * 1000 +
+			     mic_e_digit(dest3) * 100 +
+			     mic_e_digit(dest4) * 10 +
+			     mic_e_digit(dest5)) / 6000.0);
+
+		if ('0' <= dest3 && dest3 <= '9' || dest3 == 'L')
+			latitude = -latitude;
+
+		int offset = 0;
+		if ('0' <= dest4 && dest4 <= '9' || dest4 == 'L')
+			offset = 0;
+		else if ('P' <= dest4 && dest4 <= 'Z')
+			offset = 1;
+
+		int lon0 = at(1);
+		if (offset > 0 && 118 <= lon0 && lon0 <= 127)
+			longitude = lon0 - 118;			/* 0-9 degrees */
+		else if (offset == 0 && 38 <= lon0 && lon0 <= 127)
+			longitude = (lon0 - 38) + 10;		/* 10 - 99 degrees */
+		else if (offset > 0 && 108 <= lon0 && lon0 <= 117)
+			longitude = (lon0 - 108) + 100;		/* 100 - 109 degrees */
+		else if (offset > 0 && 38 <= lon0 && lon0 <= 107)
+			longitude = (lon0 - 38) + 110;		/* 110 - 179 degrees */
+
+		if (longitude != UNKNOWN) {
+			int lon1 = at(2);
+			if (lon1 >= 88 && lon1 <= 97)
+				longitude += (lon1 - 88) / 60.0;		/* 0 - 9 minutes*/
+			else if (lon1 >= 38 && lon1 <= 87)
+				longitude += ((lon1 - 38) + 10) / 60.0;	/* 10 - 59 minutes */
+		}
+		if (longitude != UNKNOWN) {
+			int lon2 = at(3);
+
+			if (lon2 >= 28 && lon2 <= 127)
+				longitude += ((lon2 - 28) + 0) / 6000.0;	/* 0 - 99 hundredths of minutes*/
+		}
+		if (longitude != UNKNOWN) {
+			if ('P' <= dest5 && dest5 <= 'Z')
+				longitude = -longitude;
+		}
+
+		int sp = at(4) - 28;
+		int dc = at(5) - 28;
+		int se = at(6) - 28;
+
+		speed_mph = sp * 10 + (dc / 10) % 10;
+		if (speed_mph >= 800)
+			speed_mph -= 800;
+
+		course = (dc % 10) * 100 + se;
+
+		if (course >= 400)
+			course -= 400;
+
+		symbol_code = (char) at(7);
+		symbol_table = (char) at(8);
+
+		/* ignore the status field */
+		return true;
+	}
+
+	/*
+	 * Pull CSE/SPD from the start of the comment and the last /A=
+	 * altitude from anywhere in it
+	 */
+	void extensions() {
+		pos = comment_offset;
+		if (comment_end - pos >= 7 && data[pos + 3] == '/') {
+			int	cse = digits(3);
+
+			pos++;
+
+			int	spd = digits(3);
+
+			if (cse >= 0 && spd >= 0) {
+				course = cse;
+				speed_mph = spd;
+				comment_offset = pos;
+			}
+		}
+
+		for (int a = comment_end - 9; a >= comment_offset; a--) {
+			if (data[a] == '/' && data[a + 1] == 'A' && data[a + 2] == '=') {
+				pos = a + 3;
+
+				int	alt = digits(6);
+
+				if (alt >= 0) {
+					altitude_ft = alt;
+					cut_offset = a;
+					cut_end = a + 9;
+					return;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Point at the information field of 'frame' and decode it, if
+	 * it's one of the types handled here. Returns false for other
+	 * types and for malformed packets
+	 */
+	public boolean decode(AprsFrame frame) {
+		boolean	ok;
+
+		set(frame);
+		switch (dti()) {
+		case AprsAprs.type_position:
+		case AprsAprs.type_position_msg:
+			if (length() < 2 || (at(0) == '!' && at(1) == '!'))
+				return false;
+			if (!is_digit(at(1)))
+				ok = compressed(1);
+			else if ((ok = position(1)) && symbol_code == '_')
+				return true;
+			break;
+		case AprsAprs.type_position_time:
+		case AprsAprs.type_position_time_msg:
+			if (length() < 2)
+				return false;
+			if (!is_digit(at(1)))
+				ok = compressed(8);
+			else if ((ok = position(8)) && symbol_code == '_')
+				return true;
+			break;
+		case AprsAprs.type_object:
+			ok = object();
+			break;
+		case AprsAprs.type_message:
+			return text_message();
+		case AprsAprs.type_raw_gps:
+			return nmea() == nmea_ok;
+		case AprsAprs.type_mic_e:
+		case AprsAprs.type_old_mic_e_rev_0:
+		case AprsAprs.type_old_mic_e:
+		case AprsAprs.type_current_mic_e:
+			return mic_e(frame);
+		default:
+			return false;
+		}
+		if (ok)
+			extensions();
+		return ok;
+	}
+
+	static int hex(int c) {
+		if ('0' <= c && c <= '9')
+			return c - '0';
+		if ('A' <= c && c <= 'F')
+			return c - 'A' + 10;
+		if ('a' <= c && c <= 'f')
+			return c - 'a' + 10;
+		return -1;
+	}
+
+	/*
+	 * Split the sentence at the commas, up to the '*' before the
+	 * checksum, checking that as it goes. Sentences without a
+	 * checksum are accepted
+	 */
+	private boolean nmea_split() {
+		int	sum = 0;
+
+		fields = 0;
+		field_start[0] = start + 1;
+		for (pos = start + 1; pos < end; pos++) {
+			int	c = data[pos] & 0xff;
+
+			if (c == '*')
+				break;
+			sum ^= c;
+			if (c == ',' && fields + 1 < nmea_max_fields) {
+				field_end[fields++] = pos;
+				field_start[fields] = pos + 1;
+			}
+		}
+		field_end[fields++] = pos;
+		if (pos == end)
+			return true;
+		if (pos + 2 >= end)
+			return false;
+
+		int	hi = hex(data[pos + 1] & 0xff);
+		int	lo = hex(data[pos + 2] & 0xff);
+
+		return hi >= 0 && lo >= 0 && ((hi << 4) | lo) == sum;
+	}
+
+	/* Whether field 0 is some talker's 'sentence' */
+	private boolean nmea_is(String sentence) {
+		if (field_end[0] - field_start[0] != 5)
+			return false;
+		for (int i = 0; i < 3; i++)
+			if (data[field_start[0] + 2 + i] != sentence.charAt(i))
+				return false;
+		return true;
+	}
+
+	private boolean nmea_empty(int f) {
+		return f >= fields || field_start[f] == field_end[f];
+	}
+
+	/* First byte of field 'f', or 0 if it's empty */
+	private char nmea_char(int f) {
+		if (nmea_empty(f))
+			return 0;
+		return (char) (data[field_start[f]] & 0xff);
+	}
+
+	/* A decimal number, NaN if it's empty or not a number */
+	private double nmea_number(int f) {
+		if (nmea_empty(f))
+			return Double.NaN;
+
+		int	i = field_start[f];
+		int	e = field_end[f];
+		boolean	negative = data[i] == '-';
+		long	whole = 0;
+		long	frac = 0;
+		long	scale = 1;
+		int	digits = 0;
+
+		if (negative)
+			i++;
+		for (; i < e && is_digit(data[i]); i++, digits++)
+			whole = whole * 10 + data[i] - '0';
+		if (i < e && data[i] == '.') {
+			for (i++; i < e && is_digit(data[i]) && scale < 1000000000000L; i++, digits++) {
+				frac = frac * 10 + data[i] - '0';
+				scale *= 10;
+			}
+		}
+		if (i != e || digits == 0)
+			return Double.NaN;
+
+		double	v = whole + (double) frac / scale;
+
+		return negative ? -v : v;
+	}
+
+	/* dddmm.mmmm and a hemisphere; NaN if either is missing */
+	private double nmea_coordinate(int f, char negative) {
+		double	v = nmea_number(f);
+		char	flag = nmea_char(f + 1);
+
+		if (Double.isNaN(v) || flag == 0)
+			return Double.NaN;
+
+		int	deg = (int) (v / 100);
+
+		v = deg + (v - deg * 100) / 60.0;
+		if (flag == negative || flag == Character.toLowerCase(negative))
+			v = -v;
+		return v;
+	}
+
+	/* Position from the fields at 'f', unless the receiver has no fix */
+	private boolean nmea_position(int f, boolean fix) {
+		if (!fix || nmea_empty(f))
+			return true;
+
+		double	lat = nmea_coordinate(f, 'S');
+		double	lon = nmea_coordinate(f + 2, 'W');
+
+		if (Double.isNaN(lat) || Double.isNaN(lon))
+			return false;
+		latitude = lat;
+		longitude = lon;
+		return true;
+	}
+
+	/* Speed in knots and course at fields 'speed' and 'cse' */
+	private boolean nmea_motion(int speed, int cse) {
+		if (!nmea_empty(speed)) {
+			double	v = nmea_number(speed);
+
+			if (Double.isNaN(v))
+				return false;
+			speed_mph = knots_to_mph(v);
+		}
+		if (!nmea_empty(cse)) {
+			double	v = nmea_number(cse);
+
+			if (Double.isNaN(v))
+				return false;
+			course = v;
+		}
+		return true;
+	}
+
+	/*
+	 * Raw NMEA from a GPS: RMC, GGA, GLL and VTG sentences from any
+	 * talker (GP, GN, GL, ...). Sentences reporting no fix decode
+	 * without a position
+	 */
+	public int nmea() {
+		if (length() < 1 || at(0) != '$')
+			return nmea_unknown;
+		if (!nmea_split())
+			return nmea_checksum;
+
+		boolean	ok;
+
+		if (nmea_is("RMC")) {
+			/* time, status, lat, N/S, lon, E/W, speed, course, ... */
+			ok = (nmea_position(3, nmea_char(2) == 'A') &&
+			      nmea_motion(7, 8));
+		} else if (nmea_is("GGA")) {
+			/* time, lat, N/S, lon, E/W, quality, sats, hdop, alt, M, ... */
+			boolean	fix = !nmea_empty(6) && nmea_char(6) != '0';
+
+			ok = nmea_position(2, fix);
+			if (ok && fix && !nmea_empty(9)) {
+				double	alt = nmea_number(9);
+
+				if (Double.isNaN(alt))
+					ok = false;
+				else
+					altitude_ft = alt * (100 / 2.54 / 12);
+			}
+		} else if (nmea_is("GLL")) {
+			/* lat, N/S, lon, E/W, time, status */
+			ok = nmea_position(1, nmea_empty(6) || nmea_char(6) == 'A');
+		} else if (nmea_is("VTG")) {
+			/* course, T, magnetic course, M, knots, N, km/h, K, or
+			 * without the units in older receivers
+			 */
+			if (nmea_char(2) == 'T')
+				ok = nmea_motion(5, 1);
+			else
+				ok = nmea_motion(3, 1);
+		} else
+			return nmea_unknown;
+		return ok ? nmea_ok : nmea_invalid;
+	}
+
+	/* Talker and sentence name, as in "GPRMC" */
+	public int sentence_offset() {
+		return field_start[0];
+	}
+
+	public int sentence_length() {
+		return field_end[0] - field_start[0];
+	}
+
+	/* Comment length, less the altitude */
+	public int comment_length() {
+		return (comment_end - comment_offset) - (cut_end - cut_offset);
+	}
+
+	/* The comment with only printable ASCII left, or null if there's none */
+	public String comment() {
+		if (comment_length() <= 0)
+			return null;
+
+		char[]	c = new char[comment_length()];
+		int	n = 0;
+
+		for (int i = comment_offset; i < comment_end; i++) {
+			int	b = data[i] & 0xff;
+
+			if (i == cut_offset)
+				i = cut_end - 1;
+			else if (' ' <= b && b <= '~')
+				c[n++] = (char) b;
+		}
+		return new String(c, 0, n);
+	}
+
+	public String name() {
+		return new String(data, name_offset, name_end - name_offset, StandardCharsets.ISO_8859_1);
+	}
+
+	public String message() {
+		return new String(data, message_offset, end - message_offset, StandardCharsets.ISO_8859_1);
+	}
+
+	public AprsInfo() {
+	}
+}
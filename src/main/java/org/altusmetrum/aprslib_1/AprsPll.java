@@ -34,6 +34,13 @@ public class AprsPll {
 
 	AprsBit	receiver;
 
+	/* When set, bits are packed eight at a time for this
+	 * deframer instead of going to 'receiver' one by one
+	 */
+	AprsDeframer	packed;
+	int		packed_bits;
+	int		packed_len;
+
 	static final float	locked_inertia = 0.73f;
 	static final float	searching_inertia = 0.64f;
 
@@ -59,7 +66,15 @@ public class AprsPll {
 
 		if (clock >= 0.5f) {
 			clock -= 1.0f;
-			receiver.receive(bit);
+			if (packed != null) {
+				packed_bits |= bit << packed_len;
+				if (++packed_len == 8) {
+					packed.receive_octet(packed_bits);
+					packed_bits = 0;
+					packed_len = 0;
+				}
+			} else
+				receiver.receive(bit);
 		}
 
 		if (bit != prev_bit) {
@@ -80,6 +95,21 @@ public class AprsPll {
 		}
 	}
 
+	/* Pass on the bits still waiting to fill an octet, one at
+	 * a time, so the end of the input doesn't strand them
+	 */
+	public void flush() {
+		for (int b = 0; b < packed_len; b++)
+			receiver.receive((packed_bits >> b) & 1);
+		packed_bits = 0;
+		packed_len = 0;
+	}
+
+	public AprsPll(AprsDeframer packed, float samples_per_second, float baud_rate) {
+		this((AprsBit) packed, samples_per_second, baud_rate);
+		this.packed = packed;
+	}
+
 	public AprsPll(AprsBit receiver, float samples_per_second, float baud_rate) {
 		this.receiver = receiver;
 		this.samples_per_second = samples_per_second;
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Integer AprsPll. The clock is a signed 32-bit phase, one bit
+ * period spanning the whole range, so passing 0.5 is the integer
+ * overflow and wraps to -0.5 on its own.
+ */
+public class AprsPllFixed {
+
+	static final double	one = 4294967296.0;	/* 1.0 in clock units */
+
+	float	samples_per_second;
+	int	clock;
+	int	step_searching;
+	int	step_locked;
+	int	step_inertia;		/* Q31 */
+	int	samples;
+	int	prev_bit;
+
+	AprsBit	receiver;
+
+	/* Bits packed eight at a time, as in AprsPll */
+	AprsDeframer	packed;
+	int		packed_bits;
+	int		packed_len;
+
+	static final int	locked_inertia = AprsFilterFixed.q15(AprsPll.locked_inertia);
+	static final int	searching_inertia = AprsFilterFixed.q15(AprsPll.searching_inertia);
+
+	public float baud_rate() {
+		return (float) (step_locked / one * samples_per_second);
+	}
+
+	int	last_locked_bit_clock;
+
+	public float pll_off() {
+		return (float) (last_locked_bit_clock / one);
+	}
+
+	public void receive(int bit, boolean locked) {
+		++samples;
+
+		int	next;
+
+		if (locked)
+			next = clock + step_locked;
+		else {
+			next = clock + step_searching;
+			step_locked = step_searching;
+		}
+
+		if (next < clock) {
+			if (packed != null) {
+				packed_bits |= bit << packed_len;
+				if (++packed_len == 8) {
+					packed.receive_octet(packed_bits);
+					packed_bits = 0;
+					packed_len = 0;
+				}
+			} else
+				receiver.receive(bit);
+		}
+		clock = next;
+
+		if (bit != prev_bit) {
+			prev_bit = bit;
+
+			int inertia;
+			if (locked)
+				inertia = locked_inertia;
+			else
+				inertia = searching_inertia;
+
+			if (locked) {
+				last_locked_bit_clock = clock;
+				step_locked -= (int) (((long) clock * step_inertia) >> 31);
+			}
+			clock = (int) (((long) clock * inertia) >> AprsFilterFixed.q);
+		}
+	}
+
+	/* Pass on the bits still waiting to fill an octet, one at
+	 * a time, so the end of the input doesn't strand them
+	 */
+	public void flush() {
+		for (int b = 0; b < packed_len; b++)
+			receiver.receive((packed_bits >> b) & 1);
+		packed_bits = 0;
+		packed_len = 0;
+	}
+
+	public AprsPllFixed(AprsDeframer packed, float samples_per_second, float baud_rate) {
+		this((AprsBit) packed, samples_per_second, baud_rate);
+		this.packed = packed;
+	}
+
+	public AprsPllFixed(AprsBit receiver, float samples_per_second, float baud_rate) {
+		this.receiver = receiver;
+		this.samples_per_second = samples_per_second;
+
+		double	step = (double) baud_rate / samples_per_second;
+
+		step_searching = (int) Math.round(step * one);
+		step_locked = step_searching;
+		step_inertia = (int) Math.round((1.0 - AprsPll.locked_inertia) / 100 * step * 2147483648.0);
+		clock = 0;
+		samples = 0;
+		prev_bit = 0;
+	}
+}
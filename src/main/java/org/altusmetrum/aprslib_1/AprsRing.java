@@ -24,33 +24,54 @@ package org.altusmetrum.aprslib_1;
 import java.util.*;
 import java.io.*;
 
+/*
+ * Ring buffer holding the most recent 'size' samples. Every sample
+ * is stored twice, 'size' entries apart, so that the whole window is
+ * always contiguous in 'data', starting at 'pos' with the oldest
+ * sample. Filters can then run a single loop over the array without
+ * worrying about wrapping around.
+ */
 public class AprsRing {
 
 	public float[]	data;
 	public int	pos;
-	boolean		zero;
+	int		size;
 
 	public float get(int o) {
-		if (zero)
-			return data[0];
-		return data[(pos + o) % data.length];
+		return data[pos + o];
 	}
 
 	public float get() {
-		return get(data.length - 1);
+		return get(size - 1);
 	}
 
 	public void put(float d) {
 		data[pos] = d;
-		pos = (pos + 1) % data.length;
+		data[pos + size] = d;
+		if (++pos == size)
+			pos = 0;
+	}
+
+	public void put(float[] d, int off, int len) {
+		for (int i = 0; i < len; i++)
+			put(d[off + i]);
+	}
+
+	public int length() {
+		return size;
+	}
+
+	/* Index in 'data' of the oldest of the last 'len' samples */
+	public int start(int len) {
+		return pos + size - len;
 	}
 
 	public AprsRing(int size) {
-		zero = (size == 0);
-		if (zero)
+		if (size == 0)
 			size = 1;
-		data = new float[size];
-		for (int i = 0; i < size; i++)
+		this.size = size;
+		data = new float[size * 2];
+		for (int i = 0; i < size * 2; i++)
 			data[i] = 0;
 		pos = 0;
 	}
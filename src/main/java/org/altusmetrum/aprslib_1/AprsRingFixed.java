@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Integer version of AprsRing for the fixed point demodulator.
+ * Every sample is stored twice, 'size' entries apart, so the whole
+ * window is contiguous in 'data' starting at start(len).
+ */
+public class AprsRingFixed {
+
+	public int[]	data;
+	public int	pos;
+	int		size;
+
+	public int get(int o) {
+		return data[pos + o];
+	}
+
+	public void put(int d) {
+		data[pos] = d;
+		data[pos + size] = d;
+		if (++pos == size)
+			pos = 0;
+	}
+
+	public int length() {
+		return size;
+	}
+
+	/* Index in 'data' of the oldest of the last 'len' samples */
+	public int start(int len) {
+		return pos + size - len;
+	}
+
+	public AprsRingFixed(int size) {
+		if (size == 0)
+			size = 1;
+		this.size = size;
+		data = new int[size * 2];
+		pos = 0;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Sliding DFT version of AprsGoertzel. Instead of running the
+ * whole recurrence over the window for every sample, this keeps
+ * the DFT bins for the current window and updates them as one
+ * sample enters and another leaves, which costs the same no matter
+ * how long the window is.
+ *
+ * The Goertzel detector applies a Hamming window to the samples;
+ * that can't be done to a sliding window directly, but the same
+ * result can be had by combining the target bin with its two
+ * neighbors in the frequency domain.
+ *
+ * That only works for the periodic form of the window,
+ * cos(2πm/N), whose spectrum falls exactly on the neighboring
+ * bins. AprsGoertzel uses AprsFilter's symmetric form,
+ * cos(2πm/(N-1)), so the two detectors' magnitudes differ
+ * slightly. Both are followed by the same slicer, which only
+ * compares the mark and space outputs of one detector.
+ *
+ * State is kept in double precision; the rotation in each step
+ * accumulates rounding error which would otherwise show up as
+ * drift after a few million samples.
+ */
+public class AprsSliding {
+
+	/* Hamming window, w(m) = a - 2 * b * cos(2πm/N) */
+	static final double	window_a = 0.53836;
+	static final double	window_b = 0.46164 / 2;
+
+	int	length;
+
+	/* Bins k-1, k and k+1 */
+	double	lo_re, lo_im;
+	double	mid_re, mid_im;
+	double	hi_re, hi_im;
+
+	/* Per-sample rotation for each bin */
+	double	lo_cos, lo_sin;
+	double	mid_cos, mid_sin;
+	double	hi_cos, hi_sin;
+
+	/*
+	 * 'sample' is the newest value in the window, 'expired' is
+	 * the one which was 'length' samples ago and is now leaving
+	 */
+	public float filter(float sample, float expired) {
+		double	d = sample - expired;
+		double	r;
+
+		r = lo_re + d;
+		lo_re = r * lo_cos - lo_im * lo_sin;
+		lo_im = r * lo_sin + lo_im * lo_cos;
+
+		r = mid_re + d;
+		mid_re = r * mid_cos - mid_im * mid_sin;
+		mid_im = r * mid_sin + mid_im * mid_cos;
+
+		r = hi_re + d;
+		hi_re = r * hi_cos - hi_im * hi_sin;
+		hi_im = r * hi_sin + hi_im * hi_cos;
+
+		double	re = window_a * mid_re - window_b * (lo_re + hi_re);
+		double	im = window_a * mid_im - window_b * (lo_im + hi_im);
+
+		return (float) Math.sqrt(re * re + im * im);
+	}
+
+	public AprsSliding(float sample_rate, float frequency, int length) {
+		this.length = length;
+
+		/* Use the same bin as AprsGoertzel */
+		int k = Math.round(length * frequency / sample_rate);
+
+		double w = 2.0 * Math.PI / length;
+
+		lo_cos = Math.cos(w * (k - 1));
+		lo_sin = Math.sin(w * (k - 1));
+		mid_cos = Math.cos(w * k);
+		mid_sin = Math.sin(w * k);
+		hi_cos = Math.cos(w * (k + 1));
+		hi_sin = Math.sin(w * (k + 1));
+	}
+}
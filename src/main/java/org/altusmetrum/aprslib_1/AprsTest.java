@@ -29,7 +29,7 @@ public class AprsTest {
 
 	class packet implements AprsPacket {
 		public void receive(AprsAprs packet) {
-			System.out.printf("baud %7.2f clock %5.2f ", demod.baud_rate(), demod.pll.pll_off());
+			System.out.printf("baud %7.2f clock %5.2f ", demod.baud_rate(), demod.back.pll.pll_off());
 			System.out.printf("%s\n", packet.toString());
 		}
 
@@ -40,15 +40,17 @@ public class AprsTest {
 	public AprsTest() {
 	}
 
-	static private int sample(FileInputStream f) throws IOException {
-		int	a = f.read();
-		if (a == -1)
-			return -1;
-		int	b = f.read();
-		if (b == -1)
-			return -1;
+	/* Convert little-endian 16-bit samples to float */
+	static int samples(byte[] data, int length, float[] samples) {
+		int	n = 0;
 
-		return a | (b << 8);
+		for (int i = 0; i + 1 < length; i += 2) {
+			int	a = data[i] & 0xff;
+			int	b = data[i+1] & 0xff;
+			short	input = (short) (a | (b << 8));
+			samples[n++] = input / 16384.0f;
+		}
+		return n;
 	}
 
 	static void dump_filter(AprsFilter f) {
@@ -68,14 +70,13 @@ public class AprsTest {
 		AudioFormat 		format;
 		AprsDemod		demod;
 
+		float[]			samples;
+
 		public void process(byte[] data, int length) {
-			for (int i = 0; i < length; i += 2) {
-				int	a = data[i] & 0xff;
-				int	b = data[i+1] & 0xff;
-				short	input = (short) (a | (b << 8));
-				float raw = input / 16384.0f;
-				demod.demod(raw);
-			}
+			if (samples == null || samples.length < length / 2)
+				samples = new float[length / 2];
+			int n = samples(data, length, samples);
+			demod.demod(samples, 0, n);
 		}
 
 		public void capture () {
@@ -151,7 +152,7 @@ public class AprsTest {
 		}
 	}
 
-	public void test_iir(AprsIir filter) {
+	public void test_iir(AprsBiquad filter) {
 		Random		r = new Random();
 		System.out.printf("v r f\n");
 		for (int i = 0; i < 10000; i++) {
@@ -168,25 +169,37 @@ public class AprsTest {
 
 		demod = new AprsDemod(p, 44100);
 
-//		test_iir(new AprsIir());
+//		test_iir(AprsBiquad.bandpass(3, 44100, 924, 2476));
 //		test_filter(demod.pre_filter, 30000);
 //		System.exit(0);
 
 		for (int i = 0; i < args.length; i++) {
-			if (args[i].equals("capture")) {
+			if (args[i].equals("-v")) {
+				/* Show the bit-level decoding as it happens */
+				demod.trace(new AprsTracePrint());
+			} else if (args[i].equals("capture")) {
 				Capture c = new Capture(demod);
 
 				c.capture();
 			} else {
 				try {
 					FileInputStream f = new FileInputStream(args[i]);
+					byte[]	data = new byte[8192];
+					float[]	samples = new float[data.length / 2];
 					try {
 						for (;;) {
-							int input = sample(f);
-							if (input == -1)
+							int length = f.read(data, 0, data.length);
+							if (length == -1)
 								break;
-							float raw = (short) input / 16384.0f;
-							demod.demod(raw);
+							if ((length & 1) != 0) {
+								int b = f.read();
+								if (b == -1)
+									length--;
+								else
+									data[length++] = (byte) b;
+							}
+							int n = samples(data, length, samples);
+							demod.demod(samples, 0, n);
 						}
 						any_read = true;
 					} catch (IOException ie) {
@@ -0,0 +1,45 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Debugging hooks for the bit and frame decoders. Nothing calls
+ * these unless a trace has been attached, so the decoders run
+ * without any console output by default.
+ */
+public interface AprsTrace {
+
+	/* NRZI-decoded bit from the HDLC deframer */
+	public void bit(int bit);
+
+	/* Opening or closing flag */
+	public void flag();
+
+	/* Abort sequence ending a frame */
+	public void abort();
+
+	/* Stuffed zero dropped */
+	public void stuff();
+
+	/* Octet assembled inside a frame */
+	public void octet(int octet);
+
+	/* Frame check at the end of a frame */
+	public void fcs(boolean good, int transmitted, int computed);
+
+	/* Anything else worth mentioning */
+	public void message(String message);
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import java.io.*;
+
+/*
+ * Trace which prints everything in the format the HDLC decoder
+ * used to write to the console
+ */
+public class AprsTracePrint implements AprsTrace {
+
+	PrintStream	out;
+
+	public void bit(int bit) {
+		out.print(bit);
+	}
+
+	public void flag() {
+		out.println(" Flag decoded");
+	}
+
+	public void abort() {
+		out.println(" 0xFE decoded");
+	}
+
+	public void stuff() {
+		out.println(" Bit stuffing detected");
+	}
+
+	public void octet(int octet) {
+		out.println(String.format(" Decoded byte: %s", octet));
+	}
+
+	public void fcs(boolean good, int transmitted, int computed) {
+		if (!good)
+			out.printf("bad fcs %04x computed %04x\n", transmitted, computed);
+	}
+
+	public void message(String message) {
+		out.println(message);
+	}
+
+	public AprsTracePrint(PrintStream out) {
+		this.out = out;
+	}
+
+	public AprsTracePrint() {
+		this(System.out);
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+/*
+ * Dot product of two float arrays, using the vector API when the
+ * jdk.incubator.vector module has been added to the JVM and falling
+ * back to the scalar loop when it hasn't.
+ */
+class AprsDot {
+
+	static final boolean vector = available();
+
+	/* Whether dot() uses vector instructions */
+	static boolean vector() {
+		return vector;
+	}
+
+	static private boolean available() {
+		try {
+			Class.forName("jdk.incubator.vector.FloatVector");
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+
+	static float scalar(float[] a, int a_off, float[] b, int b_off, int len) {
+		float	sum = 0.0f;
+
+		for (int i = 0; i < len; i++)
+			sum += a[a_off + i] * b[b_off + i];
+		return sum;
+	}
+
+	static float dot(float[] a, int a_off, float[] b, int b_off, int len) {
+		if (vector)
+			return AprsDotVector.dot(a, a_off, b, b_off, len);
+		return scalar(a, a_off, b, b_off, len);
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright © 2016 Keith Packard <keithp@keithp.com>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+
+package org.altusmetrum.aprslib_1;
+
+import jdk.incubator.vector.*;
+
+/*
+ * Vector API dot product. Only loaded by AprsDot once it has
+ * checked that the incubator module is present.
+ */
+class AprsDotVector {
+
+	static final VectorSpecies<Float> species = FloatVector.SPECIES_PREFERRED;
+
+	static float dot(float[] a, int a_off, float[] b, int b_off, int len) {
+		int		step = species.length();
+		int		bound = species.loopBound(len);
+		FloatVector	acc = FloatVector.zero(species);
+		int		i;
+
+		for (i = 0; i < bound; i += step) {
+			FloatVector va = FloatVector.fromArray(species, a, a_off + i);
+			FloatVector vb = FloatVector.fromArray(species, b, b_off + i);
+			acc = va.fma(vb, acc);
+		}
+
+		float	sum = acc.reduceLanes(VectorOperators.ADD);
+
+		for (; i < len; i++)
+			sum += a[a_off + i] * b[b_off + i];
+		return sum;
+	}
+}